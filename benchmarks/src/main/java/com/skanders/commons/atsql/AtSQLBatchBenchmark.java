@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upserting a batch of rows through {@link AtSQLBatch}: a single JDBC batch,
+ * flushed in chunks of 100 rows, adaptively chunked, rewritten into
+ * multi-row VALUES statements and split across partitions, against a raw
+ * pooled JDBC batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtSQLBatchBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    private List<Object[]> batchRows;
+
+    @Setup
+    public void setup()
+    {
+        batchRows = new ArrayList<>(rows);
+
+        for (int id = 1; id <= rows; id++)
+            batchRows.add(AtSQLBenchmarkState.row(id));
+    }
+
+    @Benchmark
+    public int[] batch(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createBatch(AtSQLBenchmarkState.UPSERT)
+                .executeBatch(batchRows.iterator()));
+    }
+
+    @Benchmark
+    public int[] batchChunked(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createBatch(AtSQLBenchmarkState.UPSERT)
+                .withChunkSize(100)
+                .executeBatch(batchRows.iterator()));
+    }
+
+    @Benchmark
+    public int[] batchAdaptive(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createBatch(AtSQLBenchmarkState.UPSERT)
+                .withAdaptiveChunkSize(10, 1000)
+                .executeBatch(batchRows.iterator()));
+    }
+
+    @Benchmark
+    public int[] batchValuesRewrite(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createBatch(AtSQLBenchmarkState.UPSERT)
+                .withValuesRewrite()
+                .executeBatch(batchRows.iterator()));
+    }
+
+    @Benchmark
+    public int[] batchParallel(AtSQLBenchmarkState state)
+    {
+        AtSQLParallelResult result = state.atSQL.createBatch(AtSQLBenchmarkState.UPSERT)
+                .executeParallel(4, batchRows.iterator());
+
+        if (result.notValid())
+            throw new IllegalStateException("parallel batch failed");
+
+        return result.getUpdateCounts();
+    }
+
+    @Benchmark
+    public int[] rawJdbc(AtSQLBenchmarkState state) throws SQLException
+    {
+        try (Connection connection = state.dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(AtSQLBenchmarkState.UPSERT)) {
+
+            connection.setAutoCommit(false);
+
+            for (Object[] row : batchRows) {
+                for (int i = 0; i < row.length; i++)
+                    statement.setObject(i + 1, row[i]);
+
+                statement.addBatch();
+            }
+
+            int[] updates = statement.executeBatch();
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            return updates;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.result.Resulted;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Shared in-memory H2 database for the benchmarks.
+ * <p>
+ * Holds an {@link AtSQL} and, as the raw JDBC baseline, a plain Hikari pool
+ * of the same size on the same database. The {@code student} table is
+ * seeded with {@link #ROWS} rows, {@code batch_student} starts empty and is
+ * only written by upserts so it never grows past the largest batch.
+ */
+@State(Scope.Benchmark)
+public class AtSQLBenchmarkState
+{
+    static final String URL       = "jdbc:h2:mem:atsql;DB_CLOSE_DELAY=-1;MODE=MySQL";
+    static final int    ROWS      = 10_000;
+    static final int    POOL_SIZE = 8;
+
+    static final String UPDATE = "UPDATE student SET name = ?, age = ?, major = ?, year = ? WHERE id = ?";
+    static final String SELECT = "SELECT id, name, age, major, year FROM student WHERE id <= ?";
+    static final String UPSERT = "" +
+            "INSERT INTO batch_student (id, name, age, major, year) VALUES (?,?,?,?,?) " +
+            "ON DUPLICATE KEY UPDATE age = VALUES(age)";
+
+    AtSQL            atSQL;
+    HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException
+    {
+        atSQL = AtSQLFactory.newInstance("sa", "", 1_800_000, POOL_SIZE)
+                .withJdbcUrl(URL)
+                .withStatementCacheSize(64)
+                .build();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(URL);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(POOL_SIZE);
+
+        dataSource = new HikariDataSource(hikariConfig);
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+
+            statement.execute("DROP TABLE IF EXISTS student");
+            statement.execute("DROP TABLE IF EXISTS batch_student");
+            statement.execute("CREATE TABLE student " +
+                    "(id INT PRIMARY KEY, name VARCHAR(64), age INT, major VARCHAR(16), year INT)");
+            statement.execute("CREATE TABLE batch_student " +
+                    "(id INT PRIMARY KEY, name VARCHAR(64), age INT, major VARCHAR(16), year INT)");
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO student (id, name, age, major, year) VALUES (?,?,?,?,?)")) {
+
+                for (int id = 1; id <= ROWS; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, "Student" + id);
+                    insert.setInt(3, 18 + id % 10);
+                    insert.setString(4, id % 2 == 0 ? "CS" : "EE");
+                    insert.setInt(5, 1 + id % 4);
+                    insert.addBatch();
+                }
+
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        atSQL.close();
+        dataSource.close();
+    }
+
+    static Object[] row(int id)
+    {
+        return new Object[]{id, "Student" + id, 18 + id % 10, id % 2 == 0 ? "CS" : "EE", 1 + id % 4};
+    }
+
+    static <T> T valueOf(Resulted<T> resulted)
+    {
+        if (resulted.notValid())
+            throw resulted.toThrowable();
+
+        return resulted.value();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrowing and returning a pooled connection through {@link
+ * AtSQL#newConnection()} against Hikari directly, single threaded and with
+ * as many threads as connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtSQLConnectionBenchmark
+{
+    @Benchmark
+    public boolean atSQLConnection(AtSQLBenchmarkState state) throws SQLException
+    {
+        try (AtSQLConnection connection = state.atSQL.newConnection()) {
+            return connection != null;
+        }
+    }
+
+    @Benchmark
+    @Threads(AtSQLBenchmarkState.POOL_SIZE)
+    public boolean atSQLConnectionContended(AtSQLBenchmarkState state) throws SQLException
+    {
+        try (AtSQLConnection connection = state.atSQL.newConnection()) {
+            return connection != null;
+        }
+    }
+
+    @Benchmark
+    public boolean hikariConnection(AtSQLBenchmarkState state) throws SQLException
+    {
+        try (Connection connection = state.dataSource.getConnection()) {
+            return connection != null;
+        }
+    }
+
+    @Benchmark
+    @Threads(AtSQLBenchmarkState.POOL_SIZE)
+    public boolean hikariConnectionContended(AtSQLBenchmarkState state) throws SQLException
+    {
+        try (Connection connection = state.dataSource.getConnection()) {
+            return connection != null;
+        }
+    }
+}
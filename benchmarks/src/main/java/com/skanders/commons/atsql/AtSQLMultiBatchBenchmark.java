@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alternating two statements through {@link AtSQLMultiBatch}, executed in
+ * the order set and with every entry of the same SQL grouped into one JDBC
+ * batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtSQLMultiBatchBenchmark
+{
+    private static final String UPDATE_AGE  = "UPDATE student SET age = ? WHERE id = ?";
+    private static final String UPDATE_YEAR = "UPDATE student SET year = ? WHERE id = ?";
+
+    @Param({"10", "100"})
+    public int rows;
+
+    @Benchmark
+    public int[] inOrder(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(fill(state.atSQL.createMultiBatch()).executeBatch());
+    }
+
+    @Benchmark
+    public int[] fullGrouping(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(fill(state.atSQL.createMultiBatch().withFullGrouping()).executeBatch());
+    }
+
+    private AtSQLMultiBatch fill(AtSQLMultiBatch multiBatch)
+    {
+        for (int id = 1; id <= rows; id++) {
+            multiBatch.setQuery(UPDATE_AGE).setList(18 + id % 10, id);
+            multiBatch.setQuery(UPDATE_YEAR).setList(1 + id % 4, id);
+        }
+
+        return multiBatch;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single row updates through {@link AtSQLQuery} and {@link AtSQLTemplate},
+ * against the same update on a raw pooled {@link PreparedStatement}. The
+ * difference is the cost AtSQL adds around binding and executing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtSQLQueryBenchmark
+{
+    private AtSQLTemplate template;
+    private int           id;
+
+    @Setup
+    public void setup(AtSQLBenchmarkState state)
+    {
+        template = state.atSQL.compile(
+                "UPDATE student SET name = :name, age = :age, major = :major, year = :year WHERE id = :id");
+        id       = 0;
+    }
+
+    private int nextId()
+    {
+        id = id % AtSQLBenchmarkState.ROWS + 1;
+
+        return id;
+    }
+
+    @Benchmark
+    public int querySetList(AtSQLBenchmarkState state)
+    {
+        int next = nextId();
+
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createQuery(AtSQLBenchmarkState.UPDATE)
+                .setList("Student" + next, 20, "CS", 2, next)
+                .executeUpdate());
+    }
+
+    @Benchmark
+    public int queryTypedSetters(AtSQLBenchmarkState state)
+    {
+        int next = nextId();
+
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createQuery(AtSQLBenchmarkState.UPDATE)
+                .setString("Student" + next)
+                .setInt(20)
+                .setString("CS")
+                .setInt(2)
+                .setInt(next)
+                .executeUpdate());
+    }
+
+    @Benchmark
+    public int templateBinder()
+    {
+        int next = nextId();
+
+        return AtSQLBenchmarkState.valueOf(template.bind()
+                .setString("name", "Student" + next)
+                .setInt("age", 20)
+                .setString("major", "CS")
+                .setInt("year", 2)
+                .setInt("id", next)
+                .executeUpdate());
+    }
+
+    @Benchmark
+    public int rawJdbc(AtSQLBenchmarkState state) throws SQLException
+    {
+        int next = nextId();
+
+        try (Connection connection = state.dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(AtSQLBenchmarkState.UPDATE)) {
+
+            statement.setString(1, "Student" + next);
+            statement.setInt(2, 20);
+            statement.setString(3, "CS");
+            statement.setInt(4, 2);
+            statement.setInt(5, next);
+
+            return statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.result.Resulted;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading rows back: mapped into a list, through a lambda or the cached
+ * bean mapper, iterated lazily, read into a detached {@link AtSQLTable}, and
+ * read off a raw pooled {@link ResultSet} as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtSQLResultBenchmark
+{
+    @Param({"10", "1000"})
+    public int rows;
+
+    public static class Student
+    {
+        public int    id;
+        public String name;
+        public int    age;
+        public String major;
+        public int    year;
+    }
+
+    private static final AtSQLRowMapper<Student> STUDENT = rs -> {
+        Student student = new Student();
+
+        student.id    = rs.getInt(1);
+        student.name  = rs.getString(2);
+        student.age   = rs.getInt(3);
+        student.major = rs.getString(4);
+        student.year  = rs.getInt(5);
+
+        return student;
+    };
+
+    @Benchmark
+    public List<Student> mappedList(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createQuery(AtSQLBenchmarkState.SELECT)
+                .setInt(rows)
+                .executeQuery(STUDENT));
+    }
+
+    @Benchmark
+    public List<Student> beanMapper(AtSQLBenchmarkState state)
+    {
+        return AtSQLBenchmarkState.valueOf(state.atSQL.createQuery(AtSQLBenchmarkState.SELECT)
+                .setInt(rows)
+                .executeQuery(Student.class));
+    }
+
+    @Benchmark
+    public void rowIterator(AtSQLBenchmarkState state, Blackhole blackhole)
+    {
+        try (Resulted<AtSQLResult> resulted = state.atSQL.createQuery(AtSQLBenchmarkState.SELECT)
+                .setInt(rows)
+                .executeQuery();
+             AtSQLRowIterator<Student> iterator = AtSQLBenchmarkState.valueOf(resulted).iterator(STUDENT)) {
+
+            while (iterator.hasNext())
+                blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void detachedTable(AtSQLBenchmarkState state, Blackhole blackhole)
+    {
+        AtSQLTable table = AtSQLBenchmarkState.valueOf(state.atSQL.createQuery(AtSQLBenchmarkState.SELECT)
+                .setInt(rows)
+                .executeQueryDetached());
+
+        for (int row = 0; row < table.getRowCount(); row++) {
+            blackhole.consume(table.getInt(row, 0));
+            blackhole.consume(table.getString(row, 1));
+            blackhole.consume(table.getInt(row, 2));
+            blackhole.consume(table.getString(row, 3));
+            blackhole.consume(table.getInt(row, 4));
+        }
+    }
+
+    @Benchmark
+    public void rawJdbc(AtSQLBenchmarkState state, Blackhole blackhole) throws SQLException
+    {
+        try (Connection connection = state.dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(AtSQLBenchmarkState.SELECT)) {
+
+            statement.setInt(1, rows);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    blackhole.consume(STUDENT.map(resultSet));
+            }
+        }
+    }
+}
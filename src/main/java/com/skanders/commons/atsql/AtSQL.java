@@ -19,14 +19,28 @@ package com.skanders.commons.atsql;
 
 
 import com.skanders.commons.def.LogPattern;
-import com.zaxxer.hikari.HikariConfig;
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Result;
+import com.skanders.commons.result.Resulted;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Autonomous SQL (AtSQL)
@@ -35,17 +49,54 @@ import java.sql.SQLException;
  * on {@link AutoCloseable} and {@link com.zaxxer.hikari.pool.HikariPool} most
  * of the resource management and query creation details are abstracted away.
  */
-public class AtSQL
+public class AtSQL implements AutoCloseable
 {
     private static final Logger LOG = LoggerFactory.getLogger(AtSQL.class);
 
-    private HikariDataSource hikariDataSource;
+    private static final int NO_ISOLATION = -1;
 
-    AtSQL(HikariConfig config)
+    private HikariDataSource   hikariDataSource;
+    private AtSQLReplicaRouter replicaRouter;
+    private boolean            readRouting;
+
+    private final int                                    statementCacheSize;
+    private final Map<Connection, AtSQLStatementCache>   statementCaches;
+    private final AtSQLCacheCounter                      statementCacheCounter;
+    private final AtSQLExecutor                          asyncExecutor;
+    private final AtSQLQueryCache                        queryCache;
+    private final AtSQLMetrics                           metrics;
+    private final boolean                                instrumented;
+    private final ObjectName                             metricsName;
+    private final AtSQLSlowQueryLog                      slowQueryLog;
+    private final Set<AtSQLWriteBehind<?>>               writeBehinds;
+    private final CompletableFuture<Result>              readiness;
+
+    AtSQL(AtSQLFactory factory)
     {
         LOG.trace(LogPattern.ENTER, "Connection Pool Constructor");
 
-        hikariDataSource = new HikariDataSource(config);
+        hikariDataSource = new HikariDataSource(factory.getHikariConfig());
+        replicaRouter    = new AtSQLReplicaRouter(factory.getReplicaConfigs(), factory.getReplicaCoolDown());
+        readRouting      = factory.isReadRouting() && !replicaRouter.isEmpty();
+
+        asyncExecutor = new AtSQLExecutor(
+                hikariDataSource.getMaximumPoolSize(),
+                factory.getAsyncQueueSize(),
+                factory.isAsyncVirtualThreads());
+
+        statementCacheSize    = factory.getStatementCacheSize();
+        statementCaches       = new ConcurrentHashMap<>();
+        statementCacheCounter = new AtSQLCacheCounter();
+
+        queryCache = newQueryCache(factory.getQueryCacheWeight(), factory.getQueryCacheTtl());
+
+        metrics      = new AtSQLMetrics(hikariDataSource);
+        instrumented = factory.isMetrics();
+        metricsName  = factory.isMetricsJmx() ? registerMetrics(metrics, hikariDataSource.getPoolName()) : null;
+        slowQueryLog = factory.getSlowQueryLog();
+        writeBehinds = ConcurrentHashMap.newKeySet();
+
+        readiness = startWarmUp(factory);
     }
 
     public AtSQLMultiBatch createMultiBatch()
@@ -60,30 +111,470 @@ public class AtSQL
 
     public AtSQLQuery createQuery(@Nonnull String query)
     {
-        return new AtSQLQuery(query, this);
+        return new AtSQLQuery(query, this, readRouting);
+    }
+
+    /**
+     * Creates a query whose {@link AtSQLQuery#executeQuery()} runs on one of
+     * the read replicas registered through {@link
+     * AtSQLFactory#withReadReplica(String)}, falling back to the primary when
+     * none are registered or healthy.
+     *
+     * @param query SQL query
+     * @return an instance of AtSQLQuery routed to the read replicas
+     */
+    public AtSQLQuery createReadQuery(@Nonnull String query)
+    {
+        return new AtSQLQuery(query, this, true);
     }
 
+    /**
+     * Creates a builder running several queries at the same time on
+     * separate pooled connections, see {@link AtSQLFanOut}.
+     *
+     * @return an instance of AtSQLFanOut
+     */
+    public AtSQLFanOut fanOut()
+    {
+        return new AtSQLFanOut(this);
+    }
+
+    /**
+     * Parses the {@code :name} params of the SQL once into a template that
+     * can be bound and executed many times, from any thread.
+     *
+     * @param query SQL query with {@code :name} params
+     * @return an instance of AtSQLTemplate
+     */
+    public AtSQLTemplate compile(@Nonnull String query)
+    {
+        return AtSQLTemplate.compile(this, query);
+    }
+
+    /**
+     * Creates a writer buffering upserts and flushing them as batches, see
+     * {@link AtSQLWriteBehind}. It is flushed and stopped when this AtSQL is
+     * closed.
+     *
+     * @param query SQL upsert taking the params of a single row
+     * @param <K>   type of the key writes are coalesced by
+     * @return an instance of AtSQLWriteBehind, to be started
+     */
+    public <K> AtSQLWriteBehind<K> createWriteBehind(@Nonnull String query)
+    {
+        return new AtSQLWriteBehind<>(this, query);
+    }
+
+    /**
+     * Pages through the query by its key column instead of an offset, see
+     * {@link AtSQLPaginator}.
+     *
+     * @param query     SQL query returning the key column
+     * @param keyColumn unique, non null column the pages are ordered by,
+     *                  optionally qualified by its table
+     * @param pageSize  maximum number of rows per page
+     * @return an instance of AtSQLPaginator
+     */
+    public AtSQLPaginator paginate(@Nonnull String query, @Nonnull String keyColumn, int pageSize)
+    {
+        return new AtSQLPaginator(this, query, keyColumn, pageSize);
+    }
+
+    /**
+     * Begins a transaction on a connection taken from the pool, keeping the
+     * default isolation level.
+     *
+     * @return the transaction, holding its connection until committed,
+     * rolled back or closed
+     */
+    public Resulted<AtSQLTransaction> beginTransaction()
+    {
+        return beginTransaction(NO_ISOLATION, false);
+    }
+
+    /**
+     * Begins a transaction with the given isolation level.
+     *
+     * @param isolation one of the {@link Connection} TRANSACTION_* levels
+     * @param readOnly  hints the driver the transaction does not write
+     * @return the transaction, holding its connection until committed,
+     * rolled back or closed
+     */
+    public Resulted<AtSQLTransaction> beginTransaction(int isolation, boolean readOnly)
+    {
+        LOG.debug(LogPattern.ENTER, "Database Begin Transaction");
+
+        AtSQLConnection atSQLConnection = null;
+
+        try {
+            atSQLConnection = newConnection();
+
+            if (isolation != NO_ISOLATION)
+                atSQLConnection.setTransactionIsolation(isolation);
+
+            if (readOnly)
+                atSQLConnection.setReadOnly(true);
+
+            atSQLConnection.setAutoCommitOff();
+
+            return Resulted.inValue(new AtSQLTransaction(this, atSQLConnection));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Begin Transaction", e.getClass(), e.getMessage());
+
+            Verify.closed(atSQLConnection);
+
+            return Resulted.inException(e);
+
+        }
+    }
 
     AtSQLConnection newConnection()
             throws SQLException
     {
         LOG.trace(LogPattern.ENTER, "Request Connection");
 
-        Connection connection = null;
-        boolean    autoCommit;
+        long       start      = instrumented ? System.nanoTime() : 0L;
+        Connection connection = hikariDataSource.getConnection();
+
+        return wrapConnection(connection, start);
+    }
+
+    AtSQLConnection newReadConnection()
+            throws SQLException
+    {
+        if (replicaRouter.isEmpty())
+            return newConnection();
+
+        LOG.trace(LogPattern.ENTER, "Request Read Connection");
+
+        long       start      = instrumented ? System.nanoTime() : 0L;
+        Connection connection = replicaRouter.getConnection();
+
+        return connection != null ? wrapConnection(connection, start) : newConnection();
+    }
+
+    private AtSQLConnection wrapConnection(Connection connection, long start)
+            throws SQLException
+    {
+        boolean             autoCommit;
+        AtSQLStatementCache statementCache;
 
         try {
-            connection = hikariDataSource.getConnection();
-            autoCommit = connection.getAutoCommit();
+            autoCommit     = connection.getAutoCommit();
+            statementCache = statementCache(connection);
 
         } catch (SQLException e) {
-            if (connection != null)
-                connection.close();
+            connection.close();
 
             throw e;
         }
 
-        return new AtSQLConnection(connection, autoCommit);
+        AtSQLConnection atSQLConnection = new AtSQLConnection(connection, autoCommit, statementCache);
+
+        if (instrumented) {
+            long acquireNanos = System.nanoTime() - start;
+
+            metrics.recordAcquire(acquireNanos);
+            atSQLConnection.instrument(metrics, slowQueryLog, acquireNanos);
+
+        } else if (slowQueryLog != null) {
+            atSQLConnection.instrument(null, slowQueryLog, 0L);
+
+        }
+
+        return atSQLConnection;
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the prepared statement cache
+     * enabled by {@link AtSQLFactory#withStatementCacheSize(int)}
+     */
+    public AtSQLCacheStats statementCacheStats()
+    {
+        return statementCacheCounter.snapshot();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the query cache enabled by
+     * {@link AtSQLFactory#withQueryCache(long)}
+     */
+    public AtSQLCacheStats queryCacheStats()
+    {
+        return queryCache != null ? queryCache.stats() : new AtSQLCacheStats(0, 0, 0);
+    }
+
+    /**
+     * @return pool gauges and, when enabled by {@link
+     * AtSQLFactory#withMetrics()}, latency and row histograms per statement
+     * fingerprint
+     */
+    public AtSQLMetricsSnapshot metrics()
+    {
+        return metrics.snapshot();
+    }
+
+    /**
+     * @return the last executions slower than the threshold set by {@link
+     * AtSQLFactory#withSlowQueryLog(long)}, most recent first, or an empty
+     * list when the slow query log is not enabled
+     */
+    public List<AtSQLSlowQuery> slowQueries()
+    {
+        return slowQueryLog != null ? slowQueryLog.recent() : Collections.emptyList();
+    }
+
+    public void clearSlowQueries()
+    {
+        if (slowQueryLog != null)
+            slowQueryLog.clear();
+    }
+
+    /**
+     * Invalidates every cached query result tagged with one of the given
+     * tables.
+     *
+     * @param tables tables whose cached results are invalidated
+     */
+    public void invalidateCache(String... tables)
+    {
+        if (queryCache != null)
+            for (String table : tables)
+                queryCache.invalidate(table);
+    }
+
+    /**
+     * Invalidates every cached query result.
+     */
+    public void invalidateCache()
+    {
+        if (queryCache != null)
+            queryCache.invalidateAll();
+    }
+
+    /**
+     * Completes once the warm up requested by {@link
+     * AtSQLFactory#withWarmUp(String...)} or {@link
+     * AtSQLFactory#withBackgroundWarmUp(String...)} is over, right away when
+     * none was requested.
+     *
+     * @return future of the warm up result
+     */
+    public CompletableFuture<Result> readiness()
+    {
+        return readiness;
+    }
+
+    /**
+     * @return true once the warm up succeeded and the pool is still open,
+     * intended for readiness probes
+     */
+    public boolean isReady()
+    {
+        return readiness.isDone() && readiness.join() == Result.VALID && !hikariDataSource.isClosed();
+    }
+
+    /**
+     * Shuts down the write behind writers, the async executor and the
+     * connection pool.
+     *
+     * @throws SkandersException once everything is closed, when a write
+     *                           behind writer could not flush its writes
+     */
+    @Override
+    public void close()
+    {
+        LOG.trace(LogPattern.ENTER, "Connection Pool Close");
+
+        Result unflushed = Result.VALID;
+
+        for (AtSQLWriteBehind<?> writeBehind : writeBehinds) {
+            Result result = writeBehind.shutdown();
+
+            if (result.notValid())
+                unflushed = result;
+        }
+
+        asyncExecutor.shutdown();
+        unregisterMetrics(metricsName);
+        replicaRouter.close();
+        hikariDataSource.close();
+
+        for (AtSQLStatementCache statementCache : statementCaches.values())
+            statementCache.closeAll();
+
+        statementCaches.clear();
+
+        if (unflushed.notValid())
+            throw new SkandersException("Write behind writes were not flushed: " + unflushed.message());
+    }
+
+    void register(AtSQLWriteBehind<?> writeBehind)
+    {
+        writeBehinds.add(writeBehind);
+    }
+
+    void unregister(AtSQLWriteBehind<?> writeBehind)
+    {
+        writeBehinds.remove(writeBehind);
+    }
+
+    AtSQLQueryCache queryCache()
+    {
+        return queryCache;
+    }
+
+    void invalidateWrite(String query)
+    {
+        if (queryCache != null)
+            queryCache.invalidateWrite(query, new String[0]);
+    }
+
+    void invalidateWrite(String query, String[] tables)
+    {
+        if (queryCache != null)
+            queryCache.invalidateWrite(query, tables);
+    }
+
+    <T> CompletableFuture<Resulted<T>> supplyAsync(Supplier<Resulted<T>> supplier)
+    {
+        return asyncExecutor.submit(supplier);
+    }
+
+    <T> CompletableFuture<Resulted<T>> trySupplyAsync(Supplier<Resulted<T>> supplier)
+    {
+        return asyncExecutor.trySubmit(supplier);
+    }
+
+    /**
+     * Borrows the minimum idle connections all at once, so the pool opens
+     * them, and prepares each query on every one of them. The statements are
+     * closed straight away, keeping them in the statement cache or the driver
+     * cache when either is enabled.
+     * <p>
+     * At least one connection is always left to the pool, as Hikari's
+     * minimum idle defaults to the maximum pool size and a background warm up
+     * holding every connection would block live requests, so a pool of a
+     * single connection is not warmed up.
+     */
+    Result warmUp(List<String> queries)
+    {
+        LOG.trace(LogPattern.ENTER, "Connection Pool Warm Up");
+
+        long                  start       = System.nanoTime();
+        int                   count       = warmUpCount(
+                hikariDataSource.getMinimumIdle(), hikariDataSource.getMaximumPoolSize());
+        List<AtSQLConnection> connections = new ArrayList<>(count);
+
+        try {
+            for (int i = 0; i < count; i++)
+                connections.add(newConnection());
+
+            for (AtSQLConnection atSQLConnection : connections)
+                for (String query : queries)
+                    atSQLConnection.preparedStatement(query).close();
+
+            LOG.info("Connection Pool warmed up {} connections with {} statements in {}ms",
+                    connections.size(), queries.size(), (System.nanoTime() - start) / 1_000_000);
+
+            return Result.VALID;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Connection Pool Warm Up", e.getClass(), e.getMessage());
+
+            return Result.exception(e);
+
+        } finally {
+            for (AtSQLConnection atSQLConnection : connections)
+                atSQLConnection.close();
+
+        }
+    }
+
+    static int warmUpCount(int minimumIdle, int maximumPoolSize)
+    {
+        if (maximumPoolSize <= 1)
+            return 0;
+
+        return Math.max(Math.min(minimumIdle, maximumPoolSize - 1), 1);
+    }
+
+    private CompletableFuture<Result> startWarmUp(AtSQLFactory factory)
+    {
+        if (!factory.isWarmUp())
+            return CompletableFuture.completedFuture(Result.VALID);
+
+        List<String> queries = new ArrayList<>(factory.getWarmUpQueries());
+
+        if (!factory.isWarmUpAsync())
+            return CompletableFuture.completedFuture(warmUp(queries));
+
+        return asyncExecutor.submit(() -> Resulted.<Void>inResult(warmUp(queries))).thenApply(Resulted::result);
+    }
+
+    private AtSQLStatementCache statementCache(Connection connection)
+            throws SQLException
+    {
+        if (statementCacheSize == 0)
+            return null;
+
+        Connection          physical       = connection.unwrap(Connection.class);
+        AtSQLStatementCache statementCache = statementCaches.get(physical);
+
+        if (statementCache != null)
+            return statementCache;
+
+        // A physical connection seen for the first time usually replaces one the pool retired
+        AtSQLStatementCache.retire(statementCaches);
+
+        return statementCaches.computeIfAbsent(physical,
+                c -> new AtSQLStatementCache(c, statementCacheSize, statementCacheCounter));
+    }
+
+
+    private static AtSQLQueryCache newQueryCache(long maxWeight, long maxTtl)
+    {
+        if (maxWeight == 0)
+            return null;
+
+        try {
+            return new AtSQLQueryCache(maxWeight, maxTtl);
+
+        } catch (SQLException e) {
+            throw new SkandersException("Could not create query cache", e);
+
+        }
+    }
+
+    private static ObjectName registerMetrics(AtSQLMetrics metrics, String poolName)
+    {
+        try {
+            ObjectName name = new ObjectName("com.skanders.commons.atsql:type=AtSQL,name=" + ObjectName.quote(poolName));
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+
+            return name;
+
+        } catch (JMException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Register AtSQL Metrics MBean", e.getClass(), e.getMessage());
+
+            return null;
+
+        }
+    }
+
+    private static void unregisterMetrics(ObjectName name)
+    {
+        if (name == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+
+        } catch (JMException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Unregister AtSQL Metrics MBean", e.getClass(), e.getMessage());
+
+        }
     }
 
     void releaseCon(Connection connection)
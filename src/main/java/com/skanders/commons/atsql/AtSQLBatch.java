@@ -25,47 +25,341 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
-public class AtSQLBatch
+public class AtSQLBatch implements AutoCloseable
 {
     private static final Logger LOG = LoggerFactory.getLogger(AtSQLBatch.class);
 
-    private final AtSQL                atSQL;
-    private final String               query;
-    private final List<AtSQLParamList> atSQLParamList;
+    private static final int NO_LIMIT = 0;
 
-    private AtSQLParamList singleList;
+    private static final int  DEFAULT_MAX_PARAMS = 32767;
+    private static final long DEFAULT_MAX_BYTES  = 1024 * 1024;
+
+    private static final int PARALLEL_BLOCK_ROWS = 1000;
+
+    private static final Duration DEFAULT_MAX_LATENCY = Duration.ofSeconds(1);
+
+    private final AtSQL          atSQL;
+    private final String         query;
+    private final AtSQLParamList atSQLParamList;
+
+    private final AtSQLTransaction atSQLTransaction;
+
+    private boolean rowOpen;
+    private int     rowStart;
+    private int     rowWidth;
+    private int     pendingRows;
 
     private boolean closed;
 
+    private int     chunkRows;
+    private long    chunkBytes;
+    private boolean chunkCommit;
+    private long    pendingBytes;
+
+    private AtSQLChunkTuner chunkTuner;
+
+    private AtSQLValuesRewriter valuesRewriter;
+    private int                 maxParams;
+    private long                maxBytes;
+
+    private AtSQLConnection             atSQLConnection;
+    private AtSQLStatement              atSQLStatement;
+    private Map<String, AtSQLStatement> rewrittenStatements;
+    private SQLException                failure;
+
+    private int[] rowUpdates;
+    private int   rowUpdateCount;
+
+    private boolean generatedKeys;
+    private long[]  rowKeys;
+    private int     rowKeyCount;
+
+    private String[] invalidates;
+
     AtSQLBatch(String query, @Nonnull AtSQL atSQL)
+    {
+        this(query, atSQL, null);
+    }
+
+    AtSQLBatch(String query, @Nonnull AtSQL atSQL, AtSQLTransaction atSQLTransaction)
     {
         Verify.notNull(query, "query cannot be null.");
         Verify.notNull(atSQL, "atSQL cannot be null.");
 
-        this.query          = query;
-        this.atSQL          = atSQL;
-        this.atSQLParamList = new ArrayList<>();
-        this.closed         = false;
+        this.query            = query;
+        this.atSQL            = atSQL;
+        this.atSQLParamList   = new AtSQLParamList();
+        this.atSQLTransaction = atSQLTransaction;
+        this.closed           = false;
+
+        this.rowOpen     = false;
+        this.rowStart    = 0;
+        this.rowWidth    = -1;
+        this.pendingRows = 0;
+
+        this.chunkRows    = NO_LIMIT;
+        this.chunkBytes   = NO_LIMIT;
+        this.chunkCommit  = false;
+        this.pendingBytes = 0;
+        this.chunkTuner   = null;
+
+        this.valuesRewriter = null;
+        this.maxParams      = DEFAULT_MAX_PARAMS;
+        this.maxBytes       = DEFAULT_MAX_BYTES;
+
+        this.rewrittenStatements = new HashMap<>();
+
+        this.rowUpdates     = new int[0];
+        this.rowUpdateCount = 0;
+
+        this.generatedKeys = false;
+        this.rowKeys       = new long[0];
+        this.rowKeyCount   = 0;
+
+        this.invalidates = new String[0];
+    }
+
+    /**
+     * Flushes the accumulated rows to the database every given number of
+     * rows, all on the same connection.
+     * <p>
+     * Once the first chunk is flushed this batch holds its connection until
+     * {@link #executeBatch()} or {@link #close()} is called.
+     *
+     * @param rows number of rows per chunk
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch withChunkSize(int rows)
+    {
+        Verify.isTrue(rows > 0, "rows must be greater than 0.");
+
+        this.chunkRows = rows;
+
+        return this;
+    }
+
+    /**
+     * Flushes the accumulated rows to the database once their estimated size
+     * reaches the given number of bytes, all on the same connection.
+     *
+     * @param bytes estimated number of bytes per chunk
+     * @return this instance of AtSQLBatch
+     * @see #withChunkSize(int)
+     */
+    public AtSQLBatch withChunkBytes(long bytes)
+    {
+        Verify.isTrue(bytes > 0, "bytes must be greater than 0.");
+
+        this.chunkBytes = bytes;
+
+        return this;
+    }
+
+    /**
+     * Tunes the number of rows per chunk from the time each flush takes,
+     * keeping every flush under a second.
+     *
+     * @param minRows smallest chunk, and the size the first chunk uses
+     * @param maxRows largest chunk
+     * @return this instance of AtSQLBatch
+     * @see #withAdaptiveChunkSize(int, int, Duration)
+     */
+    public AtSQLBatch withAdaptiveChunkSize(int minRows, int maxRows)
+    {
+        return withAdaptiveChunkSize(minRows, maxRows, DEFAULT_MAX_LATENCY);
+    }
+
+    /**
+     * Tunes the number of rows per chunk from the time each flush takes.
+     * <p>
+     * The size grows by steps while rows per second hold and is halved when
+     * a flush exceeds the latency ceiling or throughput drops, so long loads
+     * settle near the best size for the current server and load. The current
+     * size and throughput are exposed through {@link #getChunkSize()} and
+     * {@link #getChunkThroughput()}.
+     *
+     * @param minRows    smallest chunk, and the size the first chunk uses
+     * @param maxRows    largest chunk
+     * @param maxLatency longest a single flush should take
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch withAdaptiveChunkSize(int minRows, int maxRows, @Nonnull Duration maxLatency)
+    {
+        Verify.isTrue(minRows > 0, "minRows must be greater than 0.");
+        Verify.isTrue(maxRows >= minRows, "maxRows cannot be less than minRows.");
+        Verify.notNull(maxLatency, "maxLatency cannot be null.");
+
+        this.chunkTuner = new AtSQLChunkTuner(minRows, maxRows, maxLatency.toNanos());
+
+        return this;
+    }
+
+    /**
+     * @return rows per chunk, tuned when adaptive, 0 when not chunked by rows
+     */
+    public int getChunkSize()
+    {
+        return chunkTuner != null ? chunkTuner.size() : chunkRows;
+    }
+
+    /**
+     * @return running average of rows per second over the flushed chunks, 0
+     * until an adaptive chunk is flushed
+     */
+    public double getChunkThroughput()
+    {
+        return chunkTuner != null ? chunkTuner.throughput() : 0;
+    }
+
+    /**
+     * @return time the last adaptive chunk took to flush
+     */
+    public Duration getChunkLatency()
+    {
+        return Duration.ofNanos(chunkTuner != null ? chunkTuner.latencyNanos() : 0);
+    }
+
+    /**
+     * Commits after every flushed chunk instead of once at the end.
+     * <p>
+     * A failure only rolls back the chunk being flushed, previously committed
+     * chunks stay in the database.
+     *
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch withChunkCommit()
+    {
+        this.chunkCommit = true;
+
+        return this;
+    }
+
+    /**
+     * Sends the rows of a simple {@code INSERT ... VALUES (?,...)} as multi-row
+     * {@code VALUES (...),(...)} statements, keeping each statement under
+     * 32767 params and an estimated 1MB.
+     *
+     * @return this instance of AtSQLBatch
+     * @see #withValuesRewrite(int, long)
+     */
+    public AtSQLBatch withValuesRewrite()
+    {
+        return withValuesRewrite(DEFAULT_MAX_PARAMS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Sends the rows of a simple {@code INSERT ... VALUES (?,...)} as multi-row
+     * {@code VALUES (...),(...)} statements, giving multi-row throughput on
+     * drivers without {@code rewriteBatchedStatements}.
+     * <p>
+     * Each statement holds a power of two number of rows so only a few
+     * prepared variants exist. They stay open until the batch releases its
+     * connection, and are reused across batches when combined with {@link
+     * AtSQLFactory#withStatementCacheSize(int)}. The query is sent unchanged
+     * when not recognized.
+     * <p>
+     * Row counts are approximated: every row of a statement is reported as 1
+     * when its update count equals its row count, otherwise as {@link
+     * java.sql.Statement#SUCCESS_NO_INFO}. With INSERT IGNORE or ON DUPLICATE
+     * KEY UPDATE an ignored row and an updated row (counted as 2) can add up
+     * to the row count, so a row reported as 1 may not have been inserted.
+     *
+     * @param maxParams most params sent in a single statement
+     * @param maxBytes  most estimated bytes of params sent in a single
+     *                  statement
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch withValuesRewrite(int maxParams, long maxBytes)
+    {
+        Verify.isTrue(maxParams > 0, "maxParams must be greater than 0.");
+        Verify.isTrue(maxBytes > 0, "maxBytes must be greater than 0.");
+
+        this.valuesRewriter = AtSQLValuesRewriter.parse(query);
+        this.maxParams      = maxParams;
+        this.maxBytes       = maxBytes;
+
+        if (valuesRewriter == null)
+            LOG.debug(LogPattern.EXIT_FAIL, "Batch Values Rewrite", "Unrecognized Insert", query);
+
+        return this;
+    }
+
+    /**
+     * Prepares the query with {@link Statement#RETURN_GENERATED_KEYS} and
+     * collects the keys of every flushed chunk, read back through {@link
+     * #getGeneratedKeys()} once executed.
+     * <p>
+     * Keys are handed out in order to the rows that changed something, rows
+     * reporting an update count of 0 keep a key of 0. When rows only report
+     * {@link Statement#SUCCESS_NO_INFO}, as with {@link #withValuesRewrite()}
+     * or {@code rewriteBatchedStatements}, keys can only be aligned if every
+     * row generated one, so a chunk that skipped or upserted rows (INSERT
+     * IGNORE or duplicates) fails the batch. Works with chunking, but not with {@link
+     * #executeParallel(int)}.
+     *
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch withGeneratedKeys()
+    {
+        Verify.notTrue(closed, "SQLBatch cannot be called after closed");
+        Verify.isTrue(atSQLConnection == null, "withGeneratedKeys cannot be used once a chunk has been flushed");
+
+        this.generatedKeys = true;
+
+        return this;
+    }
+
+    /**
+     * @return the generated key of every flushed row in order, aligned with
+     * the update counts of {@link #executeBatch()}
+     */
+    public long[] getGeneratedKeys()
+    {
+        return Arrays.copyOf(rowKeys, rowKeyCount);
+    }
+
+    /**
+     * Tags invalidated in the query cache once this batch executes, on top of
+     * the table recognized from a simple INSERT, UPDATE or DELETE.
+     *
+     * @param tables tables written to by this batch
+     * @return this instance of AtSQLBatch
+     */
+    public AtSQLBatch invalidates(String... tables)
+    {
+        this.invalidates = tables;
+
+        return this;
     }
 
     public AtSQLBatch setList(Object... params)
     {
-        Verify.isTrue(singleList == null, "addBatchList() was not called after using add(...)");
+        Verify.notTrue(closed, "SQLBatch cannot be called after closed");
+        Verify.notTrue(rowOpen, "addBatchList() was not called after using add(...)");
 
-        atSQLParamList.add(new AtSQLParamList(params));
+        atSQLParamList.setList(params);
+        endRow();
 
         return this;
     }
 
     public AtSQLBatch add(int type, Object value)
     {
-        if (singleList == null)
-            singleList = new AtSQLParamList();
-
-        singleList.setPair(type, value);
+        rowOpen = true;
+        atSQLParamList.setPair(type, value);
 
         return this;
     }
@@ -73,20 +367,67 @@ public class AtSQLBatch
 
     public AtSQLBatch add(Object value)
     {
-        if (singleList == null)
-            singleList = new AtSQLParamList();
+        rowOpen = true;
+        atSQLParamList.set(value);
+
+        return this;
+    }
+
+    public AtSQLBatch addInt(int value)
+    {
+        rowOpen = true;
+        atSQLParamList.setInt(value);
+
+        return this;
+    }
+
+    public AtSQLBatch addLong(long value)
+    {
+        rowOpen = true;
+        atSQLParamList.setLong(value);
+
+        return this;
+    }
+
+    public AtSQLBatch addDouble(double value)
+    {
+        rowOpen = true;
+        atSQLParamList.setDouble(value);
+
+        return this;
+    }
 
-        singleList.set(value);
+    public AtSQLBatch addString(String value)
+    {
+        rowOpen = true;
+        atSQLParamList.setString(value);
+
+        return this;
+    }
+
+    public AtSQLBatch addBytes(byte[] value)
+    {
+        rowOpen = true;
+        atSQLParamList.setBytes(value);
+
+        return this;
+    }
+
+    public AtSQLBatch addNull(int type)
+    {
+        rowOpen = true;
+        atSQLParamList.setNull(type);
 
         return this;
     }
 
     public AtSQLBatch pushList()
     {
-        Verify.isTrue(singleList != null, "addBatchList() cannot be called until add() is used to start a list");
+        Verify.notTrue(closed, "SQLBatch cannot be called after closed");
+        Verify.isTrue(rowOpen, "addBatchList() cannot be called until add() is used to start a list");
 
-        atSQLParamList.add(singleList);
-        singleList = null;
+        endRow();
+        rowOpen = false;
 
         return this;
     }
@@ -94,32 +435,562 @@ public class AtSQLBatch
     public Resulted<int[]> executeBatch()
     {
         Verify.notTrue(closed, "SQLQuery cannot be called after closed");
-        Verify.notTrue(singleList != null, "using add() requires the use of setBatchList() between set lists");
+        Verify.notTrue(rowOpen, "using add() requires the use of setBatchList() between set lists");
 
         this.closed = true;
 
         LOG.debug(LogPattern.ENTER, "Database Execute Update");
 
-        try (AtSQLConnection atSQLConnection = atSQL.newConnection()) {
+        try {
+            if (failure != null)
+                throw failure;
+
+            flush();
+            commit();
+
+            return Resulted.inValue(Arrays.copyOf(rowUpdates, rowUpdateCount));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Prepare Database Update Execution", e.getClass(), e.getMessage());
+
+            rollback();
+
+            return Resulted.inException(e);
+
+        } finally {
+            release();
+
+            if (rowUpdateCount > 0 && atSQLTransaction != null)
+                atSQLTransaction.invalidateOnCommit(query, invalidates);
+            else if (rowUpdateCount > 0)
+                atSQL.invalidateWrite(query, invalidates);
+
+        }
+    }
+
+    /**
+     * Executes every row supplied by the iterator, flushing in chunks as
+     * configured by {@link #withChunkSize(int)} and {@link #withChunkBytes(long)}.
+     * <p>
+     * Rows are pulled lazily so only a single chunk is held in memory at a
+     * time. Any rows already added to this batch are executed first.
+     *
+     * @param rows iterator of row parameters
+     * @return the update counts of every row in order
+     */
+    public Resulted<int[]> executeBatch(@Nonnull Iterator<Object[]> rows)
+    {
+        Verify.notNull(rows, "rows cannot be null.");
+
+        while (rows.hasNext() && failure == null)
+            setList(rows.next());
+
+        return executeBatch();
+    }
+
+    /**
+     * @param rows stream of row parameters
+     * @return the update counts of every row in order
+     * @see #executeBatch(Iterator)
+     */
+    public Resulted<int[]> executeBatch(@Nonnull Stream<Object[]> rows)
+    {
+        Verify.notNull(rows, "rows cannot be null.");
+
+        try (Stream<Object[]> stream = rows) {
+            return executeBatch(stream.iterator());
+        }
+    }
+
+    /**
+     * Runs {@link #executeBatch()} on the AtSQL async executor. No rows may be
+     * added to this batch once called.
+     *
+     * @return a future completed with the update counts of every row in order
+     */
+    public CompletableFuture<Resulted<int[]>> executeBatchAsync()
+    {
+        Verify.notTrue(closed, "SQLQuery cannot be called after closed");
+        Verify.notTrue(rowOpen, "using add() requires the use of setBatchList() between set lists");
+
+        return atSQL.supplyAsync(this::executeBatch);
+    }
+
+    /**
+     * Executes the rows added to this batch across several pooled
+     * connections at once, for loads where the order rows are applied in
+     * does not matter.
+     * <p>
+     * Every partition runs on its own connection and transaction, taking
+     * blocks of rows as it goes: {@link #withChunkSize(int)} rows (or {@link
+     * #withChunkBytes(long)}) when set, otherwise an even share. A failed
+     * partition is rolled back on its own and the others carry on, with
+     * {@link #withChunkCommit()} only its current block is lost. Rows are
+     * only held in memory when no chunk size is set, use {@link
+     * #executeParallel(int, Iterator)} for large loads.
+     * <p>
+     * Partitions the async executor has no room for are skipped, leaving
+     * their rows to the running partitions, and a single partition runs on
+     * the calling thread when none fit.
+     *
+     * @param partitions number of connections used
+     * @return the result of every partition and the merged update counts
+     */
+    public AtSQLParallelResult executeParallel(int partitions)
+    {
+        return executeParallel(partitions, Collections.emptyIterator());
+    }
+
+    /**
+     * Streams the rows supplied by the iterator across several pooled
+     * connections at once, after any rows already added to this batch. Each
+     * partition pulls blocks of {@link #withChunkSize(int)} rows (1000 by
+     * default) so only a block per partition is held in memory.
+     *
+     * @param partitions number of connections used
+     * @param rows       iterator of row parameters
+     * @return the result of every partition and the merged update counts
+     * @see #executeParallel(int)
+     */
+    public AtSQLParallelResult executeParallel(int partitions, @Nonnull Iterator<Object[]> rows)
+    {
+        Verify.isTrue(partitions > 0, "partitions must be greater than 0.");
+        Verify.notNull(rows, "rows cannot be null.");
+        Verify.notTrue(closed, "SQLQuery cannot be called after closed");
+        Verify.notTrue(rowOpen, "using add() requires the use of setBatchList() between set lists");
+        Verify.isTrue(atSQLTransaction == null, "executeParallel cannot be used inside a transaction");
+        Verify.isTrue(atSQLConnection == null, "executeParallel cannot be used once a chunk has been flushed");
+        Verify.notTrue(generatedKeys, "executeParallel cannot return generated keys");
+
+        this.closed = true;
+
+        LOG.debug(LogPattern.ENTER, "Database Execute Parallel Update");
+
+        if (rowWidth == -1 && rows.hasNext()) {
+            Object[] first = rows.next();
+
+            atSQLParamList.setList(first);
+            rowWidth = first.length;
+            pendingRows++;
+        }
+
+        int blockRows = getChunkSize() != NO_LIMIT ? getChunkSize() :
+                rows.hasNext() ? PARALLEL_BLOCK_ROWS : Math.max((pendingRows + partitions - 1) / partitions, 1);
+
+        AtSQLBatchSource source = new AtSQLBatchSource(
+                atSQLParamList, pendingRows, rows, rowWidth, blockRows, chunkBytes);
+
+        List<CompletableFuture<Resulted<int[]>>> futures = new ArrayList<>(partitions);
+
+        for (int i = 0; i < partitions; i++) {
+            CompletableFuture<Resulted<int[]>> future = atSQL.trySupplyAsync(() -> executePartition(source));
+
+            if (future != null)
+                futures.add(future);
+        }
+
+        if (futures.size() < partitions)
+            LOG.debug(LogPattern.EXIT_FAIL, "Database Execute Parallel Update", "Executor Saturated",
+                    futures.size() + " of " + partitions + " partitions");
+
+        if (futures.isEmpty())
+            futures.add(CompletableFuture.completedFuture(executePartition(source)));
+
+        List<Resulted<int[]>> results = new ArrayList<>(partitions);
+
+        for (CompletableFuture<Resulted<int[]>> future : futures)
+            results.add(join(future));
+
+        clearRows();
+
+        int[] updateCounts = source.updateCounts();
+
+        for (Resulted<int[]> result : results) {
+            if (!result.notValid() && result.value().length > 0) {
+                atSQL.invalidateWrite(query, invalidates);
+                break;
+            }
+        }
+
+        return new AtSQLParallelResult(results, updateCounts);
+    }
+
+    /**
+     * @param partitions number of connections used
+     * @param rows       stream of row parameters
+     * @return the result of every partition and the merged update counts
+     * @see #executeParallel(int, Iterator)
+     */
+    public AtSQLParallelResult executeParallel(int partitions, @Nonnull Stream<Object[]> rows)
+    {
+        Verify.notNull(rows, "rows cannot be null.");
+
+        try (Stream<Object[]> stream = rows) {
+            return executeParallel(partitions, stream.iterator());
+        }
+    }
+
+    /**
+     * Releases the connection held by a chunked batch that was abandoned
+     * before {@link #executeBatch()}, rolling back any uncommitted chunk.
+     */
+    @Override
+    public void close()
+    {
+        if (atSQLConnection == null)
+            return;
+
+        this.closed = true;
+
+        rollback();
+        release();
+    }
+
+    private void endRow()
+    {
+        if (failure != null) {
+            clearRows();
+            return;
+        }
+
+        int width = atSQLParamList.size() - rowStart;
+
+        if (rowWidth == -1)
+            rowWidth = width;
+        else
+            Verify.isTrue(width == rowWidth, "every batch row must have the same number of params.");
+
+        if (chunkBytes != NO_LIMIT)
+            pendingBytes += atSQLParamList.estimateSize(rowStart, atSQLParamList.size());
+
+        pendingRows++;
+        rowStart = atSQLParamList.size();
+
+        if (isChunkFull()) {
+            try {
+                flush();
+
+                if (chunkCommit)
+                    atSQLConnection.commit();
+
+            } catch (SQLException e) {
+                LOG.error(LogPattern.EXIT_FAIL, "Database Chunk Flush", e.getClass(), e.getMessage());
+
+                this.failure = e;
+                clearRows();
+            }
+        }
+    }
+
+    private boolean isChunkFull()
+    {
+        int rows = getChunkSize();
+
+        return (rows != NO_LIMIT && pendingRows >= rows) ||
+                (chunkBytes != NO_LIMIT && pendingBytes >= chunkBytes);
+    }
 
+    private void flush()
+            throws SQLException
+    {
+        if (atSQLConnection == null) {
+            atSQLConnection = atSQLTransaction != null ? atSQLTransaction.connection() : atSQL.newConnection();
             atSQLConnection.setAutoCommitOff();
+        }
 
-            AtSQLStatement atSQLStatement = atSQLConnection.preparedStatement(query);
+        if (pendingRows == 0)
+            return;
 
-            for (AtSQLParamList params : atSQLParamList)
-                atSQLStatement.setBatch(params);
+        long start = System.nanoTime();
 
-            int[] rowUpdates = atSQLStatement.executeBatch();
+        if (isRewriting() && generatedKeys) {
+            long[] keys = new long[pendingRows];
 
-            atSQLConnection.commit();
+            appendUpdates(executeRewritten(
+                    atSQLConnection, rewrittenStatements, atSQLParamList, 0, pendingRows, keys));
+            appendKeys(keys);
+
+        } else if (isRewriting()) {
+            appendUpdates(executeRewritten(
+                    atSQLConnection, rewrittenStatements, atSQLParamList, 0, pendingRows, null));
+
+        } else {
+            if (atSQLStatement == null)
+                atSQLStatement = generatedKeys ?
+                        atSQLConnection.keyedStatement(query) : atSQLConnection.preparedStatement(query);
+
+            int[] updates = executeBatched(atSQLStatement, atSQLParamList, 0, pendingRows);
+
+            appendUpdates(updates);
+
+            if (generatedKeys)
+                appendKeys(alignKeys(updates, atSQLStatement.getGeneratedKeys()));
+
+        }
+
+        if (chunkTuner != null)
+            chunkTuner.record(pendingRows, System.nanoTime() - start);
+
+        clearRows();
+    }
 
-            return Resulted.inValue(rowUpdates);
+    private Resulted<int[]> executePartition(AtSQLBatchSource source)
+    {
+        AtSQLConnection             connection = null;
+        AtSQLStatement              statement  = null;
+        Map<String, AtSQLStatement> rewritten  = new HashMap<>();
+
+        AtSQLParamList block       = new AtSQLParamList();
+        List<Integer>  blockStarts = new ArrayList<>();
+        List<int[]>    blockCounts = new ArrayList<>();
+        int[]          committed   = new int[0];
+
+        try {
+            connection = atSQL.newConnection();
+            connection.setAutoCommitOff();
+
+            int start;
+
+            while ((start = source.next(block)) != -1) {
+                int rows = block.size() / source.width();
+
+                if (isRewriting()) {
+                    blockCounts.add(executeRewritten(connection, rewritten, block, 0, rows, null));
+                } else {
+                    if (statement == null)
+                        statement = connection.preparedStatement(query);
+
+                    blockCounts.add(executeBatched(statement, block, 0, rows));
+                }
+
+                blockStarts.add(start);
+
+                if (chunkCommit) {
+                    connection.commit();
+                    committed = storeCommitted(source, blockStarts, blockCounts, committed);
+                }
+            }
+
+            connection.commit();
+            committed = storeCommitted(source, blockStarts, blockCounts, committed);
+
+            return Resulted.inValue(committed);
 
         } catch (SQLException e) {
-            LOG.error(LogPattern.EXIT_FAIL, "Prepare Database Update Execution", e.getClass(), e.getMessage());
+            LOG.error(LogPattern.EXIT_FAIL, "Database Parallel Partition", e.getClass(), e.getMessage());
+
+            if (connection != null)
+                connection.rollback();
 
             return Resulted.inException(e);
 
+        } catch (RuntimeException e) {
+            // Closing restores auto-commit, which would commit the partial partition
+            if (connection != null)
+                connection.rollback();
+
+            throw e;
+
+        } finally {
+            Verify.closed(statement);
+            closeAll(rewritten);
+            Verify.closed(connection);
+
         }
     }
+
+    private static int[] storeCommitted(AtSQLBatchSource source, List<Integer> blockStarts, List<int[]> blockCounts,
+                                        int[] committed)
+    {
+        for (int i = 0; i < blockStarts.size(); i++) {
+            int[] counts = blockCounts.get(i);
+            int   length = committed.length;
+
+            source.store(blockStarts.get(i), counts);
+
+            committed = Arrays.copyOf(committed, length + counts.length);
+            System.arraycopy(counts, 0, committed, length, counts.length);
+        }
+
+        blockStarts.clear();
+        blockCounts.clear();
+
+        return committed;
+    }
+
+    private static <T> Resulted<T> join(CompletableFuture<Resulted<T>> future)
+    {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Resulted.inException(e);
+
+        } catch (ExecutionException e) {
+            return Resulted.inException(e);
+
+        }
+    }
+
+    private boolean isRewriting()
+    {
+        return valuesRewriter != null && valuesRewriter.width() == rowWidth;
+    }
+
+    private int[] executeBatched(AtSQLStatement statement, AtSQLParamList paramList, int fromRow, int rows)
+            throws SQLException
+    {
+        for (int row = fromRow; row < fromRow + rows; row++)
+            statement.setBatch(paramList, row * rowWidth, (row + 1) * rowWidth);
+
+        return statement.executeBatch();
+    }
+
+    /**
+     * Hands the keys out in order to the rows whose update count shows they
+     * changed something, the other rows keep a key of 0.
+     *
+     * @throws SQLException when rows without a count generated fewer keys
+     *                      than there are rows, as the skipped rows are unknown
+     */
+    static long[] alignKeys(int[] updates, long[] keys)
+            throws SQLException
+    {
+        long[]  aligned = new long[updates.length];
+        int     changed = 0;
+        boolean noInfo  = false;
+
+        for (int update : updates) {
+            if (update != 0 && update != Statement.EXECUTE_FAILED)
+                changed++;
+
+            noInfo |= update == Statement.SUCCESS_NO_INFO;
+        }
+
+        if (noInfo && keys.length < changed)
+            throw new SQLException("Cannot align " + keys.length + " generated keys with " + changed +
+                    " rows reporting no update count");
+
+        int key = 0;
+
+        for (int row = 0; row < updates.length && key < keys.length; row++)
+            if (updates[row] != 0 && updates[row] != Statement.EXECUTE_FAILED)
+                aligned[row] = keys[key++];
+
+        return aligned;
+    }
+
+    /**
+     * Sends the rows as multi-row statements, the variants are prepared once
+     * and kept in statements until the connection is released.
+     */
+    private int[] executeRewritten(AtSQLConnection connection, Map<String, AtSQLStatement> statements,
+                                   AtSQLParamList paramList, int fromRow, int rows, long[] keys)
+            throws SQLException
+    {
+        int[] updates = new int[rows];
+        int   maxRows = Math.max(maxParams / Math.max(rowWidth, 1), 1);
+        int   row     = 0;
+
+        while (row < rows) {
+            int count = AtSQLValuesRewriter.chunkRows(rows - row, maxRows);
+            int from  = (fromRow + row) * rowWidth;
+
+            while (count > 1 && paramList.estimateSize(from, from + count * rowWidth) > maxBytes)
+                count >>= 1;
+
+            String         rewritten = valuesRewriter.rewrite(count);
+            AtSQLStatement statement = statements.get(rewritten);
+
+            if (statement == null) {
+                statement = keys != null ?
+                        connection.keyedStatement(rewritten) : connection.preparedStatement(rewritten);
+                statements.put(rewritten, statement);
+            }
+
+            int updated = statement
+                    .setParams(paramList, from, from + count * rowWidth)
+                    .executeUpdate();
+
+            if (keys != null) {
+                long[] generated = statement.getGeneratedKeys();
+
+                // The update count cannot tell an ignored row from an upsert, only a key per row aligns
+                if (generated.length != count)
+                    throw new SQLException("Cannot align " + generated.length + " generated keys with " +
+                            count + " rewritten rows");
+
+                Arrays.fill(updates, row, row + count, 1);
+                System.arraycopy(generated, 0, keys, row, count);
+
+            } else {
+                Arrays.fill(updates, row, row + count, updated == count ? 1 : Statement.SUCCESS_NO_INFO);
+
+            }
+
+            row += count;
+        }
+
+        return updates;
+    }
+
+    private void clearRows()
+    {
+        atSQLParamList.clear();
+
+        rowStart     = 0;
+        pendingRows  = 0;
+        pendingBytes = 0;
+    }
+
+    private void commit()
+            throws SQLException
+    {
+        if (atSQLConnection != null)
+            atSQLConnection.commit();
+    }
+
+    private void rollback()
+    {
+        if (atSQLConnection != null)
+            atSQLConnection.rollback();
+    }
+
+    private void release()
+    {
+        Verify.closed(atSQLStatement);
+        closeAll(rewrittenStatements);
+        Verify.closed(atSQLConnection);
+
+        atSQLConnection = null;
+        atSQLStatement  = null;
+    }
+
+    private static void closeAll(Map<String, AtSQLStatement> statements)
+    {
+        for (AtSQLStatement statement : statements.values())
+            Verify.closed(statement);
+
+        statements.clear();
+    }
+
+    private void appendUpdates(int[] updates)
+    {
+        if (rowUpdateCount + updates.length > rowUpdates.length)
+            rowUpdates = Arrays.copyOf(rowUpdates, Math.max(rowUpdates.length * 2, rowUpdateCount + updates.length));
+
+        System.arraycopy(updates, 0, rowUpdates, rowUpdateCount, updates.length);
+        rowUpdateCount += updates.length;
+    }
+
+    private void appendKeys(long[] keys)
+    {
+        if (rowKeyCount + keys.length > rowKeys.length)
+            rowKeys = Arrays.copyOf(rowKeys, Math.max(rowKeys.length * 2, rowKeyCount + keys.length));
+
+        System.arraycopy(keys, 0, rowKeys, rowKeyCount, keys.length);
+        rowKeyCount += keys.length;
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Shared row source of a parallel batch.
+ * <p>
+ * Partitions take blocks of consecutive rows, first from the rows already
+ * added to the batch and then from the iterator, and hand back the update
+ * counts of a block once committed. Counts are merged by row index so the
+ * result keeps the order the rows were added in.
+ */
+class AtSQLBatchSource
+{
+    private final AtSQLParamList     pending;
+    private final int                pendingRows;
+    private final Iterator<Object[]> rows;
+    private final int                width;
+    private final int                blockRows;
+    private final long               blockBytes;
+
+    private int   nextPending;
+    private int   nextRow;
+    private int[] updates;
+
+    AtSQLBatchSource(AtSQLParamList pending, int pendingRows, Iterator<Object[]> rows, int width,
+                     int blockRows, long blockBytes)
+    {
+        this.pending     = pending;
+        this.pendingRows = pendingRows;
+        this.rows        = rows;
+        this.width       = width;
+        this.blockRows   = blockRows;
+        this.blockBytes  = blockBytes;
+
+        this.nextPending = 0;
+        this.nextRow     = 0;
+        this.updates     = new int[0];
+    }
+
+    /**
+     * Fills the block with the next rows.
+     *
+     * @param block cleared then filled with up to a block of rows
+     * @return index of the first row of the block, or -1 once exhausted
+     */
+    synchronized int next(AtSQLParamList block)
+            throws SQLException
+    {
+        block.clear();
+
+        int  count = 0;
+        long bytes = 0;
+
+        while (count < blockRows && (blockBytes == 0 || bytes < blockBytes)) {
+            int from = block.size();
+
+            if (nextPending < pendingRows) {
+                block.addAll(pending, nextPending * width, (nextPending + 1) * width);
+                nextPending++;
+
+            } else if (rows.hasNext()) {
+                Object[] row = rows.next();
+
+                if (row.length != width)
+                    throw new SQLException("every batch row must have the same number of params.");
+
+                block.setList(row);
+
+            } else {
+                break;
+
+            }
+
+            if (blockBytes != 0)
+                bytes += block.estimateSize(from, block.size());
+
+            count++;
+        }
+
+        if (count == 0)
+            return -1;
+
+        int start = nextRow;
+        nextRow += count;
+
+        if (nextRow > updates.length) {
+            int length = updates.length;
+
+            updates = Arrays.copyOf(updates, Math.max(length * 2, nextRow));
+            Arrays.fill(updates, length, updates.length, Statement.EXECUTE_FAILED);
+        }
+
+        return start;
+    }
+
+    synchronized void store(int start, int[] counts)
+    {
+        System.arraycopy(counts, 0, updates, start, counts.length);
+    }
+
+    synchronized int[] updateCounts()
+    {
+        return Arrays.copyOf(updates, nextRow);
+    }
+
+    int width()
+    {
+        return width;
+    }
+}
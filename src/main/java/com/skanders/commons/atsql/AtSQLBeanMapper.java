@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Maps rows onto a class through a plan computed once per class and column
+ * list.
+ * <p>
+ * The plan binds every column index to a constructor argument, setter or
+ * field up front, so mapping a row costs one typed {@link ResultSet} getter
+ * and one direct call per column. Public setters taking an int, long or
+ * double are bound through {@link LambdaMetafactory} and never box, other
+ * targets go through {@link MethodHandle}s.
+ * <p>
+ * Records and {@link JsonCreator} constructors are filled through their
+ * constructor, other classes through their no-arg constructor then setters
+ * and fields. Columns match {@link JsonProperty} names first, then property
+ * names ignoring case and underscores. Unmatched columns are skipped.
+ */
+class AtSQLBeanMapper<T> implements AtSQLRowMapper<T>
+{
+    private static final int MAX_TYPE_PLANS = 64;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    // Held by the class itself, so plans never keep a class loader alive
+    private static final ClassValue<Cache<PlanKey, AtSQLBeanMapper<?>>> PLANS =
+            new ClassValue<Cache<PlanKey, AtSQLBeanMapper<?>>>()
+            {
+                @Override
+                protected Cache<PlanKey, AtSQLBeanMapper<?>> computeValue(Class<?> type)
+                {
+                    return CacheBuilder.newBuilder().maximumSize(MAX_TYPE_PLANS).build();
+                }
+            };
+
+    private final MethodHandle creator;
+    private final int[]        creatorColumns;
+    private final Object[]     creatorDefaults;
+    private final Reader[]     creatorReaders;
+    private final int[]        writeColumns;
+    private final Writer[]     writers;
+
+    private AtSQLBeanMapper(MethodHandle creator, int[] creatorColumns, Object[] creatorDefaults,
+                            Reader[] creatorReaders, int[] writeColumns, Writer[] writers)
+    {
+        this.creator         = creator;
+        this.creatorColumns  = creatorColumns;
+        this.creatorDefaults = creatorDefaults;
+        this.creatorReaders  = creatorReaders;
+        this.writeColumns    = writeColumns;
+        this.writers         = writers;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> AtSQLRowMapper<T> forResultSet(ResultSet resultSet, Class<T> type)
+            throws SQLException
+    {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        String[]          labels   = new String[metaData.getColumnCount()];
+
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = metaData.getColumnLabel(i + 1);
+
+        try {
+            return (AtSQLRowMapper<T>) PLANS.get(type).get(new PlanKey(labels), () -> plan(type, labels));
+
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException ?
+                    (SQLException) e.getCause() : new SQLException(e.getCause());
+
+        }
+    }
+
+    @Override
+    public T map(ResultSet resultSet)
+            throws SQLException
+    {
+        try {
+            Object[] args = creatorColumns.length == 0 ? NO_ARGS : new Object[creatorColumns.length];
+
+            for (int i = 0; i < args.length; i++)
+                args[i] = creatorColumns[i] == 0 ?
+                        creatorDefaults[i] : creatorReaders[i].read(resultSet, creatorColumns[i]);
+
+            @SuppressWarnings("unchecked")
+            T target = (T) (Object) creator.invokeExact(args);
+
+            for (int i = 0; i < writers.length; i++)
+                writers[i].write(target, resultSet, writeColumns[i]);
+
+            return target;
+
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+
+        } catch (Throwable t) {
+            throw new SQLException("Could not map row", t);
+
+        }
+    }
+
+    static String normalize(String name)
+    {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static <T> AtSQLBeanMapper<T> plan(Class<T> type, String[] labels)
+            throws SQLException
+    {
+        Map<String, Integer> columns = new HashMap<>();
+
+        for (int i = labels.length - 1; i >= 0; i--)
+            columns.put(normalize(labels[i]), i + 1);
+
+        try {
+            Constructor<?> constructor = creatorConstructor(type);
+
+            if (constructor != null)
+                return constructorPlan(type, constructor, columns);
+
+            return setterPlan(type, columns);
+
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new SQLException("Cannot map rows to " + type.getName(), e);
+
+        }
+    }
+
+    private static <T> AtSQLBeanMapper<T> constructorPlan(Class<T> type, Constructor<?> constructor,
+                                                          Map<String, Integer> columns)
+            throws ReflectiveOperationException
+    {
+        String[]   names    = creatorNames(type, constructor);
+        Class<?>[] params   = constructor.getParameterTypes();
+        int[]      index    = new int[names.length];
+        Object[]   defaults = new Object[names.length];
+        Reader[]   readers  = new Reader[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            Integer column = columns.get(normalize(names[i]));
+
+            index[i]    = column == null ? 0 : column;
+            defaults[i] = params[i].isPrimitive() ? defaultValue(params[i]) : null;
+            readers[i]  = params[i].isPrimitive() ? orDefault(reader(params[i]), defaults[i]) : reader(params[i]);
+        }
+
+        constructor.setAccessible(true);
+
+        MethodHandle creator = MethodHandles.lookup().unreflectConstructor(constructor)
+                .asSpreader(Object[].class, names.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+
+        return new AtSQLBeanMapper<>(creator, index, defaults, readers, new int[0], new Writer[0]);
+    }
+
+    private static <T> AtSQLBeanMapper<T> setterPlan(Class<T> type, Map<String, Integer> columns)
+            throws ReflectiveOperationException
+    {
+        Constructor<T> constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+
+        MethodHandle creator = MethodHandles.lookup().unreflectConstructor(constructor)
+                .asSpreader(Object[].class, 0)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+
+        Map<Integer, Writer> writers = new HashMap<>();
+
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int mods = field.getModifiers();
+
+                if (Modifier.isStatic(mods) || Modifier.isFinal(mods) || field.isAnnotationPresent(JsonIgnore.class))
+                    continue;
+
+                if (!Modifier.isPublic(mods) && !field.isAnnotationPresent(JsonProperty.class))
+                    continue;
+
+                Integer column = columns.get(normalize(propertyName(field, field.getName())));
+
+                if (column != null && !writers.containsKey(column)) {
+                    field.setAccessible(true);
+                    writers.put(column, handleWriter(MethodHandles.lookup().unreflectSetter(field), field.getType()));
+                }
+            }
+        }
+
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 1 ||
+                    !method.getName().startsWith("set") || method.getName().length() == 3 ||
+                    method.isAnnotationPresent(JsonIgnore.class))
+                continue;
+
+            Integer column = columns.get(normalize(propertyName(method, method.getName().substring(3))));
+
+            if (column != null)
+                writers.put(column, setterWriter(method));
+        }
+
+        int[]    writeColumns = new int[writers.size()];
+        Writer[] writeTargets = new Writer[writers.size()];
+        int      i            = 0;
+
+        for (Map.Entry<Integer, Writer> entry : writers.entrySet()) {
+            writeColumns[i] = entry.getKey();
+            writeTargets[i] = entry.getValue();
+            i++;
+        }
+
+        return new AtSQLBeanMapper<>(creator, new int[0], new Object[0], new Reader[0], writeColumns, writeTargets);
+    }
+
+    private static Constructor<?> creatorConstructor(Class<?> type)
+            throws ReflectiveOperationException
+    {
+        if (isRecord(type)) {
+            Object[]   components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+            Class<?>[] params     = new Class<?>[components.length];
+
+            for (int i = 0; i < components.length; i++)
+                params[i] = (Class<?>) components[i].getClass().getMethod("getType").invoke(components[i]);
+
+            return type.getDeclaredConstructor(params);
+        }
+
+        for (Constructor<?> constructor : type.getDeclaredConstructors())
+            if (constructor.isAnnotationPresent(JsonCreator.class))
+                return constructor;
+
+        return null;
+    }
+
+    private static String[] creatorNames(Class<?> type, Constructor<?> constructor)
+            throws ReflectiveOperationException
+    {
+        if (isRecord(type)) {
+            Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+            String[] names      = new String[components.length];
+
+            for (int i = 0; i < components.length; i++) {
+                String name = (String) components[i].getClass().getMethod("getName").invoke(components[i]);
+                names[i] = propertyName(type.getDeclaredField(name), name);
+            }
+
+            return names;
+        }
+
+        Parameter[] parameters = constructor.getParameters();
+        String[]    names      = new String[parameters.length];
+
+        for (int i = 0; i < parameters.length; i++) {
+            names[i] = propertyName(parameters[i], parameters[i].isNamePresent() ? parameters[i].getName() : null);
+
+            if (names[i] == null)
+                throw new IllegalArgumentException("@JsonCreator parameters need @JsonProperty names");
+        }
+
+        return names;
+    }
+
+    private static boolean isRecord(Class<?> type)
+    {
+        try {
+            return (Boolean) Class.class.getMethod("isRecord").invoke(type);
+
+        } catch (ReflectiveOperationException e) {
+            return false;
+
+        }
+    }
+
+    private static String propertyName(AnnotatedElement element, String name)
+    {
+        JsonProperty property = element.getAnnotation(JsonProperty.class);
+
+        return property != null && !property.value().isEmpty() ? property.value() : name;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Writer setterWriter(Method method)
+            throws ReflectiveOperationException
+    {
+        Class<?> param = method.getParameterTypes()[0];
+
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers()) &&
+                (param == int.class || param == long.class || param == double.class)) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle         handle = lookup.unreflect(method);
+
+                if (param == int.class) {
+                    ObjIntConsumer<Object> consumer = (ObjIntConsumer<Object>) lambda(lookup, handle,
+                            ObjIntConsumer.class, MethodType.methodType(void.class, Object.class, int.class));
+
+                    return (target, rs, column) -> consumer.accept(target, rs.getInt(column));
+
+                } else if (param == long.class) {
+                    ObjLongConsumer<Object> consumer = (ObjLongConsumer<Object>) lambda(lookup, handle,
+                            ObjLongConsumer.class, MethodType.methodType(void.class, Object.class, long.class));
+
+                    return (target, rs, column) -> consumer.accept(target, rs.getLong(column));
+
+                } else {
+                    ObjDoubleConsumer<Object> consumer = (ObjDoubleConsumer<Object>) lambda(lookup, handle,
+                            ObjDoubleConsumer.class, MethodType.methodType(void.class, Object.class, double.class));
+
+                    return (target, rs, column) -> consumer.accept(target, rs.getDouble(column));
+
+                }
+
+            } catch (Throwable t) {
+                // the lambda cannot be spun from this class loader, fall back to the handle
+            }
+        }
+
+        method.setAccessible(true);
+
+        return handleWriter(MethodHandles.lookup().unreflect(method), param);
+    }
+
+    private static Object lambda(MethodHandles.Lookup lookup, MethodHandle handle, Class<?> functional,
+                                 MethodType erased)
+            throws Throwable
+    {
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "accept",
+                MethodType.methodType(functional),
+                erased,
+                handle,
+                handle.type().changeReturnType(void.class));
+
+        return site.getTarget().invoke();
+    }
+
+    private static Writer handleWriter(MethodHandle handle, Class<?> type)
+    {
+        MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        Reader       reader = type.isPrimitive() ? orDefault(reader(type), defaultValue(type)) : reader(type);
+
+        return (target, rs, column) -> {
+            setter.invokeExact(target, reader.read(rs, column));
+        };
+    }
+
+    private static Reader reader(Class<?> type)
+    {
+        if (type == int.class || type == Integer.class)
+            return nullable(ResultSet::getInt);
+        else if (type == long.class || type == Long.class)
+            return nullable(ResultSet::getLong);
+        else if (type == double.class || type == Double.class)
+            return nullable(ResultSet::getDouble);
+        else if (type == float.class || type == Float.class)
+            return nullable(ResultSet::getFloat);
+        else if (type == short.class || type == Short.class)
+            return nullable(ResultSet::getShort);
+        else if (type == byte.class || type == Byte.class)
+            return nullable(ResultSet::getByte);
+        else if (type == boolean.class || type == Boolean.class)
+            return nullable(ResultSet::getBoolean);
+        else if (type == String.class)
+            return ResultSet::getString;
+        else if (type == BigDecimal.class)
+            return ResultSet::getBigDecimal;
+        else if (type == byte[].class)
+            return ResultSet::getBytes;
+        else if (type == Object.class)
+            return ResultSet::getObject;
+        else
+            return (rs, column) -> rs.getObject(column, type);
+    }
+
+    private static Reader nullable(Reader reader)
+    {
+        return (rs, column) -> {
+            Object value = reader.read(rs, column);
+
+            return rs.wasNull() ? null : value;
+        };
+    }
+
+    private static Reader orDefault(Reader reader, Object defaultValue)
+    {
+        return (rs, column) -> {
+            Object value = reader.read(rs, column);
+
+            return value == null ? defaultValue : value;
+        };
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if (type == boolean.class)
+            return false;
+        else if (type == char.class)
+            return '\0';
+        else if (type == byte.class)
+            return (byte) 0;
+        else if (type == short.class)
+            return (short) 0;
+        else if (type == int.class)
+            return 0;
+        else if (type == long.class)
+            return 0L;
+        else if (type == float.class)
+            return 0f;
+        else
+            return 0d;
+    }
+
+    @FunctionalInterface
+    private interface Reader
+    {
+        Object read(ResultSet resultSet, int column) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Writer
+    {
+        void write(Object target, ResultSet resultSet, int column) throws Throwable;
+    }
+
+    private static final class PlanKey
+    {
+        private final String[] labels;
+        private final int      hash;
+
+        private PlanKey(String[] labels)
+        {
+            this.labels = labels;
+            this.hash   = Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            PlanKey that = (PlanKey) o;
+
+            return hash == that.hash && Arrays.equals(labels, that.labels);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
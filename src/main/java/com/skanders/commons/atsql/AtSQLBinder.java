@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Result;
+import com.skanders.commons.result.Resulted;
+
+import javax.annotation.Nonnull;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Binds the named params of an {@link AtSQLTemplate} for an execution.
+ * <p>
+ * Values are bound by name once no matter how many times the name appears,
+ * binding a name again replaces its value. A binder can be executed several
+ * times but is not thread-safe, each thread should take its own from
+ * {@link AtSQLTemplate#bind()}.
+ * <p>
+ * A collection bound through {@link #setList(String, Collection)} expands
+ * its {@code IN (:name)} into a power of two placeholders, padded with its
+ * last value, so lists of any length only produce a handful of distinct
+ * statements for the driver and statement caches. Lists over 1024 values
+ * are split into several executions whose rows are merged, which is only
+ * correct for a list used as {@code IN (:name)}. The executions of a split
+ * list run in a single transaction, so a failure part way applies none of
+ * them.
+ */
+public class AtSQLBinder
+{
+    private static final int UNBOUND = -1;
+    private static final int NO_SPLIT = -1;
+
+    static final int MAX_LIST_SIZE = 1024;
+
+    private static final String[] PLACEHOLDERS = placeholders(MAX_LIST_SIZE);
+
+    private final AtSQLTemplate  atSQLTemplate;
+    private final AtSQLParamList atSQLParamList;
+    private final int[]          bound;
+    private final int[]          lengths;
+
+    AtSQLBinder(@Nonnull AtSQLTemplate atSQLTemplate)
+    {
+        this.atSQLTemplate  = atSQLTemplate;
+        this.atSQLParamList = AtSQLParamList.withCapacity(atSQLTemplate.nameCount());
+        this.bound          = new int[atSQLTemplate.nameCount()];
+        this.lengths        = new int[atSQLTemplate.nameCount()];
+
+        Arrays.fill(bound, UNBOUND);
+    }
+
+    private static String[] placeholders(int maxSize)
+    {
+        String[] placeholders = new String[Integer.numberOfTrailingZeros(maxSize) + 1];
+        String   placeholder  = "?";
+
+        for (int i = 0; i < placeholders.length; i++) {
+            placeholders[i] = placeholder;
+            placeholder     = placeholder + "," + placeholder;
+        }
+
+        return placeholders;
+    }
+
+    /**
+     * @return the smallest power of two holding the given number of values
+     */
+    static int bucket(int size)
+    {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    public AtSQLBinder set(@Nonnull String name, Object value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.set(value);
+
+        return this;
+    }
+
+    public AtSQLBinder set(@Nonnull String name, int type, Object value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setPair(type, value);
+
+        return this;
+    }
+
+    public AtSQLBinder setInt(@Nonnull String name, int value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setInt(value);
+
+        return this;
+    }
+
+    public AtSQLBinder setLong(@Nonnull String name, long value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setLong(value);
+
+        return this;
+    }
+
+    public AtSQLBinder setDouble(@Nonnull String name, double value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setDouble(value);
+
+        return this;
+    }
+
+    public AtSQLBinder setString(@Nonnull String name, String value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setString(value);
+
+        return this;
+    }
+
+    public AtSQLBinder setBytes(@Nonnull String name, byte[] value)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setBytes(value);
+
+        return this;
+    }
+
+    public AtSQLBinder setNull(@Nonnull String name, int type)
+    {
+        bind(atSQLTemplate.index(name), 0);
+        atSQLParamList.setNull(type);
+
+        return this;
+    }
+
+    /**
+     * Binds the values of a collection, for use as {@code IN (:name)}.
+     * Duplicate values are dropped when the list has to be split. An empty
+     * collection is bound as a single NULL, matching no row.
+     *
+     * @param name   param name
+     * @param values values of the list
+     * @return this instance of AtSQLBinder
+     */
+    public AtSQLBinder setList(@Nonnull String name, @Nonnull Collection<?> values)
+    {
+        Verify.notNull(values, "values cannot be null.");
+
+        Collection<?> list = values.size() > MAX_LIST_SIZE ? new LinkedHashSet<>(values) : values;
+
+        if (list.isEmpty()) {
+            bind(atSQLTemplate.index(name), 1);
+            atSQLParamList.setNull(Types.NULL);
+
+        } else {
+            bind(atSQLTemplate.index(name), list.size());
+
+            for (Object value : list)
+                atSQLParamList.set(value);
+
+        }
+
+        return this;
+    }
+
+    /**
+     * Creates a query with the bound params, for options such as caching or
+     * a fetch size before executing it. Lists must fit a single execution.
+     *
+     * @return an instance of AtSQLQuery
+     */
+    public AtSQLQuery toQuery()
+    {
+        return single(atSQLTemplate.atSQL()::createQuery);
+    }
+
+    /**
+     * @param atSQLTransaction transaction the query runs in
+     * @return an instance of AtSQLQuery running in the transaction
+     */
+    public AtSQLQuery toQuery(@Nonnull AtSQLTransaction atSQLTransaction)
+    {
+        Verify.notNull(atSQLTransaction, "atSQLTransaction cannot be null.");
+
+        return single(atSQLTransaction::createQuery);
+    }
+
+    /**
+     * @return the rows updated, summed over every execution of a split list
+     */
+    public Resulted<Integer> executeUpdate()
+    {
+        return executeSplit(AtSQLQuery::executeUpdate, 0, Integer::sum);
+    }
+
+    public Resulted<AtSQLResult> executeQuery()
+    {
+        return toQuery().executeQuery();
+    }
+
+    /**
+     * @return the mapped rows, merged in order over every execution of a
+     * split list
+     */
+    public <T> Resulted<List<T>> executeQuery(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        return executeMerged(query -> query.executeQuery(rowMapper));
+    }
+
+    /**
+     * @return the mapped rows, merged in order over every execution of a
+     * split list
+     */
+    public <T> Resulted<List<T>> executeQuery(@Nonnull Class<T> type)
+    {
+        return executeMerged(query -> query.executeQuery(type));
+    }
+
+    public Resulted<AtSQLTable> executeQueryDetached()
+    {
+        return toQuery().executeQueryDetached();
+    }
+
+    private <T> Resulted<List<T>> executeMerged(Function<AtSQLQuery, Resulted<List<T>>> execute)
+    {
+        return executeSplit(execute, new ArrayList<>(), (rows, chunkRows) -> {
+            rows.addAll(chunkRows);
+
+            return rows;
+        });
+    }
+
+    /**
+     * Runs every execution of a split list in one transaction, rolled back
+     * as soon as one of them fails.
+     */
+    private <T> Resulted<T> executeSplit(Function<AtSQLQuery, Resulted<T>> execute, T merged, BinaryOperator<T> merge)
+    {
+        int split  = split();
+        int chunks = chunks(split);
+
+        if (chunks == 1)
+            return execute.apply(bindQuery(atSQLTemplate.atSQL()::createQuery, split, 0));
+
+        Resulted<AtSQLTransaction> transaction = atSQLTemplate.atSQL().beginTransaction();
+
+        if (transaction.notValid())
+            return Resulted.inResulted(transaction);
+
+        try (AtSQLTransaction atSQLTransaction = transaction.value()) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                Resulted<T> resulted = execute.apply(bindQuery(atSQLTransaction::createQuery, split, chunk));
+
+                if (resulted.notValid())
+                    return resulted;
+
+                merged = merge.apply(merged, resulted.value());
+            }
+
+            Result result = atSQLTransaction.commit();
+
+            return result.notValid() ? Resulted.inResult(result) : Resulted.inValue(merged);
+        }
+    }
+
+    /**
+     * Marks the values about to be appended as the name's, compacting the
+     * params first once values replaced by rebinding outweigh bound ones.
+     */
+    private void bind(int index, int length)
+    {
+        bound[index] = UNBOUND;
+
+        if (atSQLParamList.size() > 2 * boundSize())
+            compact();
+
+        bound[index]   = atSQLParamList.size();
+        lengths[index] = length;
+    }
+
+    private int boundSize()
+    {
+        int size = 0;
+
+        for (int i = 0; i < bound.length; i++)
+            if (bound[i] != UNBOUND)
+                size += width(i);
+
+        return size;
+    }
+
+    private void compact()
+    {
+        AtSQLParamList values = new AtSQLParamList();
+        values.addAll(atSQLParamList, 0, atSQLParamList.size());
+
+        atSQLParamList.clear();
+
+        for (int i = 0; i < bound.length; i++) {
+            if (bound[i] == UNBOUND)
+                continue;
+
+            int from = bound[i];
+
+            bound[i] = atSQLParamList.size();
+            atSQLParamList.addAll(values, from, from + width(i));
+        }
+    }
+
+    private int width(int index)
+    {
+        return lengths[index] == 0 ? 1 : lengths[index];
+    }
+
+    int paramCount()
+    {
+        return atSQLParamList.size();
+    }
+
+    Object value(@Nonnull String name, int offset)
+    {
+        return atSQLParamList.getValue(bound[atSQLTemplate.index(name)] + offset);
+    }
+
+    private AtSQLQuery single(Function<String, AtSQLQuery> create)
+    {
+        int split = split();
+
+        Verify.isTrue(split == NO_SPLIT,
+                "a list param holds more than " + MAX_LIST_SIZE + " values and needs several executions.");
+
+        return bindQuery(create, split, 0);
+    }
+
+    /**
+     * @return index of the list param split over several executions
+     */
+    int split()
+    {
+        int split = NO_SPLIT;
+
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > MAX_LIST_SIZE) {
+                Verify.isTrue(split == NO_SPLIT, "only one list param can hold more than " + MAX_LIST_SIZE + " values.");
+                split = i;
+            }
+        }
+
+        return split;
+    }
+
+    int chunks(int split)
+    {
+        return split == NO_SPLIT ? 1 : (lengths[split] + MAX_LIST_SIZE - 1) / MAX_LIST_SIZE;
+    }
+
+    /**
+     * @return the SQL of the given execution, list params expanded to their
+     * bucket of placeholders
+     */
+    String query(int split, int chunk)
+    {
+        String[] segments = atSQLTemplate.segments();
+        int[]    slots    = atSQLTemplate.slots();
+        boolean  lists    = false;
+
+        for (int i = 0; i < lengths.length; i++) {
+            Verify.isTrue(bound[i] != UNBOUND, "param :" + atSQLTemplate.name(i) + " was not bound.");
+
+            lists |= lengths[i] != 0;
+        }
+
+        if (!lists)
+            return atSQLTemplate.getQuery();
+
+        StringBuilder query = new StringBuilder(segments[0]);
+
+        for (int p = 0; p < slots.length; p++) {
+            int bucket = lengths[slots[p]] == 0 ? 1 : bucket(length(slots[p], split, chunk));
+
+            query.append(PLACEHOLDERS[Integer.numberOfTrailingZeros(bucket)]).append(segments[p + 1]);
+        }
+
+        return query.toString();
+    }
+
+    private AtSQLQuery bindQuery(Function<String, AtSQLQuery> create, int split, int chunk)
+    {
+        AtSQLQuery atSQLQuery = create.apply(query(split, chunk));
+
+        for (int slot : atSQLTemplate.slots()) {
+            int from = bound[slot] + (slot == split ? chunk * MAX_LIST_SIZE : 0);
+
+            if (lengths[slot] == 0) {
+                atSQLQuery.addParams(atSQLParamList, from, from + 1);
+                continue;
+            }
+
+            int length = length(slot, split, chunk);
+
+            atSQLQuery.addParams(atSQLParamList, from, from + length);
+
+            for (int pad = length; pad < bucket(length); pad++)
+                atSQLQuery.addParams(atSQLParamList, from + length - 1, from + length);
+        }
+
+        return atSQLQuery;
+    }
+
+    private int length(int slot, int split, int chunk)
+    {
+        if (slot != split)
+            return lengths[slot];
+
+        return Math.min(lengths[slot] - chunk * MAX_LIST_SIZE, MAX_LIST_SIZE);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class AtSQLCacheCounter
+{
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    AtSQLCacheCounter()
+    {
+        this.hits      = new LongAdder();
+        this.misses    = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    void hit()
+    {
+        hits.increment();
+    }
+
+    void miss()
+    {
+        misses.increment();
+    }
+
+    void eviction()
+    {
+        evictions.increment();
+    }
+
+    AtSQLCacheStats snapshot()
+    {
+        return new AtSQLCacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+}
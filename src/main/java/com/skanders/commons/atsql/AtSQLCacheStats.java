@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+/**
+ * Point in time statistics of an AtSQL cache.
+ */
+public class AtSQLCacheStats
+{
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    AtSQLCacheStats(long hits, long misses, long evictions)
+    {
+        this.hits      = hits;
+        this.misses    = misses;
+        this.evictions = evictions;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public long getRequests()
+    {
+        return hits + misses;
+    }
+
+    public double getHitRate()
+    {
+        long requests = getRequests();
+
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AtSQLCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+/**
+ * Tunes the chunk size of an {@link AtSQLBatch} from the time each flush
+ * takes, additive increase and multiplicative decrease.
+ * <p>
+ * Every full chunk grows the size by a sixteenth of the configured range
+ * while throughput holds. A chunk slower than the latency ceiling, or whose
+ * rows per second fall well under the running average, halves it. Chunks
+ * cut short by the byte limit or the end of the batch are measured but do
+ * not move the size.
+ */
+class AtSQLChunkTuner
+{
+    private static final double DECREASE_RATIO = 0.8;
+    private static final double ALPHA          = 0.3;
+
+    private final int  minRows;
+    private final int  maxRows;
+    private final int  step;
+    private final long maxLatencyNanos;
+
+    private volatile int    size;
+    private volatile double throughput;
+    private volatile long   latencyNanos;
+
+    AtSQLChunkTuner(int minRows, int maxRows, long maxLatencyNanos)
+    {
+        this.minRows         = minRows;
+        this.maxRows         = maxRows;
+        this.step            = Math.max((maxRows - minRows) / 16, 1);
+        this.maxLatencyNanos = maxLatencyNanos;
+
+        this.size         = minRows;
+        this.throughput   = 0;
+        this.latencyNanos = 0;
+    }
+
+    void record(int rows, long nanos)
+    {
+        double rate = rows * 1e9 / Math.max(nanos, 1);
+
+        latencyNanos = nanos;
+
+        if (rows >= size) {
+            if (nanos > maxLatencyNanos || rate < throughput * DECREASE_RATIO)
+                size = Math.max(size / 2, minRows);
+            else
+                size = Math.min(size + step, maxRows);
+        }
+
+        throughput = throughput == 0 ? rate : throughput + ALPHA * (rate - throughput);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return running average of rows per second over the flushed chunks
+     */
+    double throughput()
+    {
+        return throughput;
+    }
+
+    long latencyNanos()
+    {
+        return latencyNanos;
+    }
+}
@@ -23,30 +23,74 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 
 class AtSQLConnection implements AutoCloseable
 {
     private static final Logger LOG = LoggerFactory.getLogger(AtSQLConnection.class);
 
-    private Connection connection;
-    private boolean    autoCommit;
-    private boolean    closed;
-    private boolean    toggledCommit;
+    private Connection          connection;
+    private AtSQLStatementCache statementCache;
+    private boolean             autoCommit;
+    private boolean             closed;
+    private boolean             toggledCommit;
+    private boolean             borrowed;
+    private boolean             uncommitted;
+
+    private AtSQLMetrics      metrics;
+    private AtSQLSlowQueryLog slowQueryLog;
+    private long              acquireNanos;
 
     AtSQLConnection(Connection connection, boolean autoCommit)
+    {
+        this(connection, autoCommit, null);
+    }
+
+    AtSQLConnection(Connection connection, boolean autoCommit, AtSQLStatementCache statementCache)
     {
         Verify.notNull(connection, "connection cannot be null.");
 
-        this.connection = connection;
-        this.autoCommit = autoCommit;
-        this.closed     = false;
+        this.connection     = connection;
+        this.statementCache = statementCache;
+        this.autoCommit     = autoCommit;
+        this.closed         = false;
+        this.borrowed       = false;
+        this.uncommitted    = false;
+    }
+
+    /**
+     * Returns a view of this connection for statements running inside an
+     * {@link AtSQLTransaction}. The view shares the connection and statement
+     * cache but its commit, rollback and close are left to the transaction.
+     */
+    AtSQLConnection borrow()
+    {
+        AtSQLConnection view = new AtSQLConnection(connection, autoCommit, statementCache);
+        view.borrowed = true;
+        view.metrics      = metrics;
+        view.slowQueryLog = slowQueryLog;
+
+        return view;
+    }
+
+    /**
+     * Records execute times of the statements prepared on this connection,
+     * the acquire wait is attributed to the first one. Either may be null.
+     */
+    void instrument(AtSQLMetrics metrics, AtSQLSlowQueryLog slowQueryLog, long acquireNanos)
+    {
+        this.metrics      = metrics;
+        this.slowQueryLog = slowQueryLog;
+        this.acquireNanos = acquireNanos;
     }
 
     void setAutoCommitOff()
             throws SQLException
     {
-        if (this.autoCommit) {
+        if (this.autoCommit && !this.borrowed) {
             connection.setAutoCommit(false);
             this.toggledCommit = true;
             this.autoCommit    = false;
@@ -56,17 +100,126 @@ class AtSQLConnection implements AutoCloseable
     void commit()
             throws SQLException
     {
+        if (this.borrowed)
+            return;
+
         if (!this.autoCommit) {
             connection.commit();
+            this.uncommitted = false;
         } else {
             throw new SkandersException("Attempting to commit on a autoCommit connection");
         }
     }
 
+    void rollback()
+    {
+        if (this.autoCommit || this.borrowed)
+            return;
+
+        try {
+            connection.rollback();
+            this.uncommitted = false;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Could not rollback connection", e.getClass(), e.getMessage());
+
+        }
+    }
+
+    void rollbackTransaction()
+            throws SQLException
+    {
+        connection.rollback();
+        this.uncommitted = false;
+    }
+
+    Savepoint setSavepoint(String name)
+            throws SQLException
+    {
+        return name == null ? connection.setSavepoint() : connection.setSavepoint(name);
+    }
+
+    void rollback(Savepoint savepoint)
+            throws SQLException
+    {
+        connection.rollback(savepoint);
+    }
+
+    void releaseSavepoint(Savepoint savepoint)
+            throws SQLException
+    {
+        connection.releaseSavepoint(savepoint);
+    }
+
+    void setTransactionIsolation(int isolation)
+            throws SQLException
+    {
+        connection.setTransactionIsolation(isolation);
+    }
+
+    void setReadOnly(boolean readOnly)
+            throws SQLException
+    {
+        connection.setReadOnly(readOnly);
+    }
+
     AtSQLStatement preparedStatement(String query)
             throws SQLException
     {
-        return new AtSQLStatement(connection.prepareStatement(query));
+        markUncommitted();
+
+        if (statementCache != null)
+            return instrument(statementCache.prepare(query), query);
+
+        return instrument(new AtSQLStatement(connection.prepareStatement(query)), query);
+    }
+
+    AtSQLStatement forwardStatement(String query)
+            throws SQLException
+    {
+        markUncommitted();
+
+        // Cached statements are prepared with the same forward-only, read-only defaults
+        if (statementCache != null)
+            return instrument(statementCache.prepare(query), query);
+
+        return instrument(new AtSQLStatement(connection.prepareStatement(
+                query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)), query);
+    }
+
+    AtSQLStatement keyedStatement(String query)
+            throws SQLException
+    {
+        markUncommitted();
+
+        if (statementCache != null)
+            return instrument(statementCache.prepareKeyed(query), query);
+
+        return instrument(new AtSQLStatement(connection.prepareStatement(
+                query, Statement.RETURN_GENERATED_KEYS)), query);
+    }
+
+    /**
+     * Cached statements run on the physical connection, out of sight of the
+     * pool's own rollback of uncommitted work, so it is tracked here.
+     */
+    private void markUncommitted()
+    {
+        if (!this.autoCommit && !this.borrowed)
+            this.uncommitted = true;
+    }
+
+    private AtSQLStatement instrument(AtSQLStatement atSQLStatement, String query)
+    {
+        if (metrics == null && slowQueryLog == null)
+            return atSQLStatement;
+
+        if (metrics != null && acquireNanos != 0) {
+            metrics.recordAcquire(query, acquireNanos);
+            acquireNanos = 0;
+        }
+
+        return atSQLStatement.instrument(metrics, slowQueryLog, query);
     }
 
     @Override
@@ -75,9 +228,18 @@ class AtSQLConnection implements AutoCloseable
         if (this.closed)
             return;
 
+        if (this.borrowed) {
+            this.closed = true;
+            return;
+        }
+
         try {
+            // Restoring auto-commit would commit work that was never committed
+            if (this.uncommitted)
+                rollback();
+
             if (this.toggledCommit)
-                connection.setAutoCommit(this.autoCommit);
+                connection.setAutoCommit(true);
 
             connection.close();
             this.closed = true;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.result.Resulted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor running asynchronous AtSQL executions.
+ * <p>
+ * Platform threads are capped at the size of the connection pool, as more
+ * threads would only wait on a connection, with a bounded queue in front.
+ * When virtual threads are requested and supported by the running JVM every
+ * task gets its own virtual thread, bounded by the same pool plus queue
+ * size. Submissions beyond the bound complete with an exception rather than
+ * block the caller.
+ */
+class AtSQLExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLExecutor.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final ExecutorService executorService;
+    private final Semaphore       permits;
+
+    AtSQLExecutor(int poolSize, int queueSize, boolean virtualThreads)
+    {
+        ExecutorService virtual = virtualThreads ? newVirtualExecutor() : null;
+
+        if (virtual != null) {
+            this.executorService = virtual;
+            this.permits         = new Semaphore(poolSize + queueSize);
+
+        } else {
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+                    poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueSize),
+                    new ThreadFactoryBuilder().setNameFormat("AtSQL Async [%d]").setDaemon(true).build());
+
+            threadPool.allowCoreThreadTimeOut(true);
+
+            this.executorService = threadPool;
+            this.permits         = null;
+        }
+    }
+
+    <T> CompletableFuture<Resulted<T>> submit(Supplier<Resulted<T>> supplier)
+    {
+        CompletableFuture<Resulted<T>> future = trySubmit(supplier);
+
+        return future != null ? future : rejected(new RejectedExecutionException("AtSQL async executor is saturated"));
+    }
+
+    /**
+     * @return the future of the execution, or null when the executor is
+     * saturated
+     */
+    <T> CompletableFuture<Resulted<T>> trySubmit(Supplier<Resulted<T>> supplier)
+    {
+        if (permits != null && !permits.tryAcquire())
+            return null;
+
+        try {
+            CompletableFuture<Resulted<T>> future = CompletableFuture.supplyAsync(supplier, executorService);
+
+            if (permits != null)
+                future.whenComplete((value, throwable) -> permits.release());
+
+            return future;
+
+        } catch (RejectedExecutionException e) {
+            if (permits != null)
+                permits.release();
+
+            return null;
+        }
+    }
+
+    void shutdown()
+    {
+        executorService.shutdown();
+    }
+
+    private static <T> CompletableFuture<Resulted<T>> rejected(RejectedExecutionException e)
+    {
+        LOG.error(LogPattern.EXIT_FAIL, "Submit Async Database Execution", e.getClass(), e.getMessage());
+
+        return CompletableFuture.completedFuture(Resulted.inException(e));
+    }
+
+    private static ExecutorService newVirtualExecutor()
+    {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService) method.invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads are not supported by this JVM, falling back to platform threads");
+
+            return null;
+        }
+    }
+}
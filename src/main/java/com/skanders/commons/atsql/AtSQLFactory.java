@@ -19,12 +19,43 @@ package com.skanders.commons.atsql;
 import com.skanders.commons.def.Verify;
 import com.zaxxer.hikari.HikariConfig;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class AtSQLFactory
 {
+    private static final int  DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+    private static final long DEFAULT_REPLICA_COOL_DOWN = 30000L;
+    private static final long DEFAULT_REPLICA_TIMEOUT   = 1000L;
+    private static final int  DEFAULT_SLOW_QUERY_SIZE   = 100;
+    private static final long DEFAULT_QUERY_CACHE_TTL   = 3600000L;
+
     private HikariConfig hikariConfig;
     private boolean      driverOrUrlSet;
+    private int          statementCacheSize;
+    private int          asyncQueueSize;
+    private boolean      asyncVirtualThreads;
+    private long         queryCacheWeight;
+    private long         queryCacheTtl;
+    private boolean      metrics;
+    private boolean      metricsJmx;
+    private long         slowQueryThreshold;
+    private int          slowQuerySize;
+    private double       slowQuerySampleRate;
+    private boolean      slowQueryRedact;
+    private boolean      warmUp;
+    private boolean      warmUpAsync;
+    private List<String> warmUpQueries;
+
+    private List<String>  replicaUrls;
+    private List<String>  replicaHosts;
+    private List<Integer> replicaPorts;
+    private long          replicaCoolDown;
+    private long          replicaTimeout;
+    private boolean       readRouting;
 
     private AtSQLFactory(
             String username, String password, long maxLifetime, int maxPoolSize)
@@ -36,7 +67,28 @@ public class AtSQLFactory
         this.hikariConfig.setMaxLifetime(maxLifetime);
         this.hikariConfig.setMaximumPoolSize(maxPoolSize);
 
-        this.driverOrUrlSet = false;
+        this.driverOrUrlSet      = false;
+        this.statementCacheSize  = 0;
+        this.asyncQueueSize      = DEFAULT_ASYNC_QUEUE_SIZE;
+        this.asyncVirtualThreads = false;
+        this.queryCacheWeight    = 0;
+        this.queryCacheTtl       = DEFAULT_QUERY_CACHE_TTL;
+        this.metrics             = false;
+        this.metricsJmx          = false;
+        this.slowQueryThreshold  = -1;
+        this.slowQuerySize       = DEFAULT_SLOW_QUERY_SIZE;
+        this.slowQuerySampleRate = 0.0;
+        this.slowQueryRedact     = false;
+        this.warmUp              = false;
+        this.warmUpAsync         = false;
+        this.warmUpQueries       = new ArrayList<>();
+
+        this.replicaUrls     = new ArrayList<>();
+        this.replicaHosts    = new ArrayList<>();
+        this.replicaPorts    = new ArrayList<>();
+        this.replicaCoolDown = DEFAULT_REPLICA_COOL_DOWN;
+        this.replicaTimeout  = DEFAULT_REPLICA_TIMEOUT;
+        this.readRouting     = false;
     }
 
     public static AtSQLFactory newInstance(
@@ -89,11 +141,445 @@ public class AtSQLFactory
         return this;
     }
 
+    /**
+     * @param minimumIdle number of idle connections the pool keeps open, and
+     *                    the number of connections opened by a warm up
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withMinimumIdle(int minimumIdle)
+    {
+        Verify.isTrue(minimumIdle >= 0, "minimumIdle cannot be negative.");
+
+        hikariConfig.setMinimumIdle(minimumIdle);
+
+        return this;
+    }
+
+    /**
+     * Warms the pool up in {@link #build()} before returning: opens
+     * connections up to the minimum idle, leaving at least one to the pool,
+     * and prepares the given statements on each of them.
+     * <p>
+     * Prepared statements are kept by {@link #withStatementCacheSize(int)} or
+     * by the driver cache of {@link #withMySQLPerformanceSettings()}. A warm
+     * up that fails is logged and reported through {@link AtSQL#readiness()}
+     * while the AtSQL stays usable.
+     *
+     * @param queries hot SQL statements to prepare on every connection
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withWarmUp(String... queries)
+    {
+        this.warmUp      = true;
+        this.warmUpAsync = false;
+        this.warmUpQueries.addAll(Arrays.asList(queries));
+
+        return this;
+    }
+
+    /**
+     * Runs the warm up of {@link #withWarmUp(String...)} on the async
+     * executor so {@link #build()} returns right away, completion is tracked
+     * by {@link AtSQL#readiness()} and {@link AtSQL#isReady()}.
+     *
+     * @param queries hot SQL statements to prepare on every connection
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withBackgroundWarmUp(String... queries)
+    {
+        this.warmUp      = true;
+        this.warmUpAsync = true;
+        this.warmUpQueries.addAll(Arrays.asList(queries));
+
+        return this;
+    }
+
+    /**
+     * Enables a driver independent LRU cache of prepared statements, held
+     * per physical connection and keyed by SQL text.
+     * <p>
+     * Repeated queries on the same pooled connection skip re-preparing no
+     * matter which driver is in use. Statistics are available through {@link
+     * AtSQL#statementCacheStats()}.
+     *
+     * @param size maximum number of statements cached per connection, 0
+     *             disables the cache
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withStatementCacheSize(int size)
+    {
+        Verify.isTrue(size >= 0, "size cannot be negative.");
+
+        this.statementCacheSize = size;
+
+        return this;
+    }
+
+    /**
+     * Sets how many asynchronous executions may wait for a free thread once
+     * every thread of the async executor is busy. Executions beyond this
+     * complete with an exception instead of blocking the caller.
+     *
+     * @param queueSize number of queued async executions
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withAsyncQueueSize(int queueSize)
+    {
+        Verify.isTrue(queueSize > 0, "queueSize must be greater than 0.");
+
+        this.asyncQueueSize = queueSize;
+
+        return this;
+    }
+
+    /**
+     * Runs asynchronous executions on virtual threads when supported by the
+     * running JVM, falling back to platform threads otherwise.
+     *
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withAsyncVirtualThreads()
+    {
+        this.asyncVirtualThreads = true;
+
+        return this;
+    }
+
+    /**
+     * Enables the query result cache used by {@link
+     * AtSQLQuery#withCache(Duration, String...)}.
+     * <p>
+     * Results are materialized and weighed by rows times columns, the least
+     * recently used entries are evicted once the total weight is reached.
+     * Statistics are available through {@link AtSQL#queryCacheStats()}.
+     * Entries are kept at most an hour, whatever their own TTL.
+     *
+     * @param maxWeight maximum number of cached cells (rows times columns)
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withQueryCache(long maxWeight)
+    {
+        Verify.isTrue(maxWeight > 0, "maxWeight must be greater than 0.");
+
+        this.queryCacheWeight = maxWeight;
+
+        return this;
+    }
+
+    /**
+     * Enables the query result cache as {@link #withQueryCache(long)} does,
+     * keeping entries at most maxTtl. Longer TTLs given to {@link
+     * AtSQLQuery#withCache(Duration, String...)} are cut down to it.
+     *
+     * @param maxWeight maximum number of cached cells (rows times columns)
+     * @param maxTtl    longest time an entry is kept
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withQueryCache(long maxWeight, Duration maxTtl)
+    {
+        Verify.notNull(maxTtl, "maxTtl cannot be null.");
+        Verify.isTrue(maxTtl.toMillis() > 0, "maxTtl must be at least a millisecond.");
+
+        this.queryCacheTtl = maxTtl.toMillis();
+
+        return withQueryCache(maxWeight);
+    }
+
+    /**
+     * Records connection acquire wait, execute time and rows fetched per
+     * statement fingerprint, available through {@link AtSQL#metrics()}.
+     * <p>
+     * Pool gauges are reported whether or not metrics are enabled.
+     *
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withMetrics()
+    {
+        this.metrics = true;
+
+        return this;
+    }
+
+    /**
+     * Enables {@link #withMetrics()} and registers them as an {@link
+     * AtSQLMetricsMXBean} named after the pool on the platform MBean server.
+     *
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withMetricsJmx()
+    {
+        this.metrics    = true;
+        this.metricsJmx = true;
+
+        return this;
+    }
+
+    /**
+     * Logs every statement execution taking at least the given time and
+     * keeps the last 100 of them, available through {@link
+     * AtSQL#slowQueries()}.
+     * <p>
+     * Executions are grouped by a normalized fingerprint of their SQL, bound
+     * params are not captured unless {@link #withSlowQueryParams(double,
+     * boolean)} is set.
+     *
+     * @param threshold threshold in milliseconds
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withSlowQueryLog(long threshold)
+    {
+        return withSlowQueryLog(threshold, DEFAULT_SLOW_QUERY_SIZE);
+    }
+
+    /**
+     * @param threshold threshold in milliseconds
+     * @param size      number of slow executions kept
+     * @return this instance of AtSQLFactory
+     * @see #withSlowQueryLog(long)
+     */
+    public AtSQLFactory withSlowQueryLog(long threshold, int size)
+    {
+        Verify.isTrue(threshold >= 0, "threshold cannot be negative.");
+        Verify.isTrue(size > 0, "size must be greater than 0.");
+
+        this.slowQueryThreshold = threshold;
+        this.slowQuerySize      = size;
+
+        return this;
+    }
+
+    /**
+     * Captures a copy of the bound params of a share of slow executions, the
+     * first row only for batches.
+     *
+     * @param sampleRate share of slow executions captured, between 0 and 1
+     * @param redact     keeps only the type (and length) of each value
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withSlowQueryParams(double sampleRate, boolean redact)
+    {
+        Verify.isTrue(sampleRate >= 0.0 && sampleRate <= 1.0, "sampleRate must be between 0 and 1.");
+
+        this.slowQuerySampleRate = sampleRate;
+        this.slowQueryRedact     = redact;
+
+        return this;
+    }
+
+    /**
+     * Registers a read-replica pool reached through the given JDBC url. The
+     * replica uses the same credentials, pool settings and data source
+     * properties as the primary.
+     * <p>
+     * Reads created with {@link AtSQL#createReadQuery(String)}, or every
+     * {@link AtSQLQuery#executeQuery()} when {@link #withReadRouting()} is
+     * set, are balanced across replicas. Updates and batches always run on
+     * the primary. A replica that cannot hand out a connection within a
+     * second is skipped, see {@link #withReplicaConnectionTimeout(long)}.
+     *
+     * @param url JDBC url of the replica
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withReadReplica(String url)
+    {
+        Verify.notNull(url, "url cannot be null.");
+
+        replicaUrls.add(url);
+
+        return this;
+    }
+
+    /**
+     * Registers a read-replica pool reached through the driver set by {@link
+     * #withDriver(String, String, int, String)}.
+     *
+     * @param hostname hostname of the replica
+     * @param port     port of the replica
+     * @return this instance of AtSQLFactory
+     * @see #withReadReplica(String)
+     */
+    public AtSQLFactory withReadReplica(String hostname, int port)
+    {
+        Verify.notNull(hostname, "hostname cannot be null.");
+
+        replicaHosts.add(hostname);
+        replicaPorts.add(port);
+
+        return this;
+    }
+
+    /**
+     * Sets how long a replica that failed to hand out a connection is skipped
+     * before being tried again.
+     *
+     * @param coolDown cool down in milliseconds
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withReplicaCoolDown(long coolDown)
+    {
+        Verify.isTrue(coolDown >= 0, "coolDown cannot be negative.");
+
+        this.replicaCoolDown = coolDown;
+
+        return this;
+    }
+
+    /**
+     * Sets how long a read waits for a replica connection before moving on
+     * to the next replica, or the primary. Kept short so a saturated or
+     * unreachable replica does not hold up reads.
+     *
+     * @param timeout connection timeout in milliseconds, at least 250
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withReplicaConnectionTimeout(long timeout)
+    {
+        Verify.isTrue(timeout >= 250, "timeout must be at least 250 milliseconds.");
+
+        this.replicaTimeout = timeout;
+
+        return this;
+    }
+
+    /**
+     * Routes every {@link AtSQLQuery#executeQuery()} to the read replicas,
+     * not only those created with {@link AtSQL#createReadQuery(String)}.
+     *
+     * @return this instance of AtSQLFactory
+     */
+    public AtSQLFactory withReadRouting()
+    {
+        this.readRouting = true;
+
+        return this;
+    }
+
     public AtSQL build()
     {
         Verify.isTrue(driverOrUrlSet, "Driver or URL must be set.");
+        Verify.isTrue(replicaHosts.isEmpty() || hikariConfig.getDataSourceClassName() != null,
+                "Replica hostnames require withDriver(...), use a replica JDBC url instead.");
+
+        return new AtSQL(this);
+    }
+
+    HikariConfig getHikariConfig()
+    {
+        return hikariConfig;
+    }
+
+    int getStatementCacheSize()
+    {
+        return statementCacheSize;
+    }
+
+    int getAsyncQueueSize()
+    {
+        return asyncQueueSize;
+    }
+
+    boolean isAsyncVirtualThreads()
+    {
+        return asyncVirtualThreads;
+    }
+
+    long getQueryCacheWeight()
+    {
+        return queryCacheWeight;
+    }
+
+    long getQueryCacheTtl()
+    {
+        return queryCacheTtl;
+    }
+
+    boolean isMetrics()
+    {
+        return metrics;
+    }
+
+    boolean isMetricsJmx()
+    {
+        return metricsJmx;
+    }
+
+    AtSQLSlowQueryLog getSlowQueryLog()
+    {
+        if (slowQueryThreshold < 0)
+            return null;
+
+        return new AtSQLSlowQueryLog(slowQueryThreshold, slowQuerySize, slowQuerySampleRate, slowQueryRedact);
+    }
+
+    boolean isWarmUp()
+    {
+        return warmUp;
+    }
+
+    boolean isWarmUpAsync()
+    {
+        return warmUpAsync;
+    }
+
+    List<String> getWarmUpQueries()
+    {
+        return warmUpQueries;
+    }
+
+    long getReplicaCoolDown()
+    {
+        return replicaCoolDown;
+    }
+
+    boolean isReadRouting()
+    {
+        return readRouting;
+    }
+
+    List<HikariConfig> getReplicaConfigs()
+    {
+        List<HikariConfig> replicaConfigs = new ArrayList<>();
+
+        for (String url : replicaUrls) {
+            HikariConfig replicaConfig = newReplicaConfig(replicaConfigs.size());
+            replicaConfig.setJdbcUrl(url);
+
+            if (hikariConfig.getDriverClassName() != null)
+                replicaConfig.setDriverClassName(hikariConfig.getDriverClassName());
+
+            replicaConfigs.add(replicaConfig);
+        }
+
+        for (int i = 0; i < replicaHosts.size(); i++) {
+            HikariConfig replicaConfig = newReplicaConfig(replicaConfigs.size());
+            replicaConfig.setDataSourceClassName(hikariConfig.getDataSourceClassName());
+            replicaConfig.addDataSourceProperty("serverName", replicaHosts.get(i));
+            replicaConfig.addDataSourceProperty("portNumber", replicaPorts.get(i));
+
+            replicaConfigs.add(replicaConfig);
+        }
+
+        return replicaConfigs;
+    }
+
+    private HikariConfig newReplicaConfig(int index)
+    {
+        HikariConfig replicaConfig = new HikariConfig();
+
+        replicaConfig.setPoolName("AtSQL-Replica-" + index);
+        replicaConfig.setUsername(hikariConfig.getUsername());
+        replicaConfig.setPassword(hikariConfig.getPassword());
+        replicaConfig.setMaxLifetime(hikariConfig.getMaxLifetime());
+        replicaConfig.setMaximumPoolSize(hikariConfig.getMaximumPoolSize());
+        replicaConfig.setReadOnly(true);
+        replicaConfig.setConnectionTimeout(replicaTimeout);
+        // A replica that is down at start up is routed around instead of failing build()
+        replicaConfig.setInitializationFailTimeout(-1);
+
+        for (Map.Entry<Object, Object> property : hikariConfig.getDataSourceProperties().entrySet())
+            replicaConfig.addDataSourceProperty(property.getKey().toString(), property.getValue());
 
-        return new AtSQL(hikariConfig);
+        return replicaConfig;
     }
 
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Resulted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent queries at the same time, each on its own pooled
+ * connection, created by {@link AtSQL#fanOut()}.
+ * <p>
+ * Every query is started on the AtSQL async executor before any is waited
+ * on, so the whole fan out takes about as long as its slowest query. With a
+ * deadline, queries still running once it passes are reported as timed out
+ * and are cancelled by the database through their query timeout.
+ */
+public class AtSQLFanOut
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLFanOut.class);
+
+    private final AtSQL                                         atSQL;
+    private final Map<String, AtSQLQuery>                       queries;
+    private final Map<String, Supplier<Resulted<List<Object>>>> executions;
+
+    private Duration deadline;
+    private boolean  executed;
+
+    AtSQLFanOut(@Nonnull AtSQL atSQL)
+    {
+        this.atSQL      = atSQL;
+        this.queries    = new LinkedHashMap<>();
+        this.executions = new LinkedHashMap<>();
+
+        this.deadline = null;
+        this.executed = false;
+    }
+
+    /**
+     * @param name      name the result is gathered under
+     * @param query     query to run
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return this instance of AtSQLFanOut
+     */
+    public <T> AtSQLFanOut add(@Nonnull String name, @Nonnull AtSQLQuery query,
+                               @Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        Verify.notNull(rowMapper, "rowMapper cannot be null.");
+
+        return add(name, query, () -> gathered(query.executeQuery(rowMapper)));
+    }
+
+    /**
+     * @param name  name the result is gathered under
+     * @param query query to run
+     * @param type  class each row is mapped to
+     * @param <T>   type of the mapped row
+     * @return this instance of AtSQLFanOut
+     */
+    public <T> AtSQLFanOut add(@Nonnull String name, @Nonnull AtSQLQuery query, @Nonnull Class<T> type)
+    {
+        Verify.notNull(type, "type cannot be null.");
+
+        return add(name, query, () -> gathered(query.executeQuery(type)));
+    }
+
+    /**
+     * Gathers every query by the deadline, queries without a query timeout
+     * of their own are given the deadline as one.
+     *
+     * @param deadline longest the fan out waits for its queries
+     * @return this instance of AtSQLFanOut
+     */
+    public AtSQLFanOut withDeadline(@Nonnull Duration deadline)
+    {
+        Verify.notNull(deadline, "deadline cannot be null.");
+        Verify.isTrue(!deadline.isNegative() && !deadline.isZero(), "deadline must be positive.");
+
+        this.deadline = deadline;
+
+        return this;
+    }
+
+    /**
+     * Starts every query then waits for all of them, or the deadline.
+     *
+     * @return the result of every query by name
+     */
+    public AtSQLFanOutResult execute()
+    {
+        Verify.notTrue(executed, "AtSQLFanOut cannot be executed twice");
+        this.executed = true;
+
+        LOG.debug(LogPattern.ENTER, "Database Execute Fan Out");
+
+        long start = System.nanoTime();
+
+        if (deadline != null)
+            for (AtSQLQuery query : queries.values())
+                if (!query.hasQueryTimeout())
+                    query.withQueryTimeout(deadline);
+
+        Map<String, CompletableFuture<Resulted<List<Object>>>> futures = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Supplier<Resulted<List<Object>>>> execution : executions.entrySet())
+            futures.put(execution.getKey(), atSQL.supplyAsync(execution.getValue()));
+
+        Map<String, Resulted<List<Object>>> results = new LinkedHashMap<>();
+
+        for (Map.Entry<String, CompletableFuture<Resulted<List<Object>>>> future : futures.entrySet())
+            results.put(future.getKey(), await(future.getKey(), future.getValue(), start));
+
+        return new AtSQLFanOutResult(results);
+    }
+
+    private AtSQLFanOut add(String name, AtSQLQuery query, Supplier<Resulted<List<Object>>> execution)
+    {
+        Verify.notNull(name, "name cannot be null.");
+        Verify.notNull(query, "query cannot be null.");
+        Verify.notTrue(executions.containsKey(name), "a query named " + name + " was already added");
+        Verify.notTrue(executed, "AtSQLFanOut cannot be added to once executed");
+
+        queries.put(name, query);
+        executions.put(name, execution);
+
+        return this;
+    }
+
+    private static <T> Resulted<List<Object>> gathered(Resulted<List<T>> resulted)
+    {
+        if (resulted.notValid())
+            return Resulted.inResulted(resulted);
+
+        return Resulted.inValue(Collections.unmodifiableList(resulted.value()));
+    }
+
+    private Resulted<List<Object>> await(
+            String name, CompletableFuture<Resulted<List<Object>>> future, long start)
+    {
+        try {
+            if (deadline == null)
+                return future.get();
+
+            long remaining = deadline.toNanos() - (System.nanoTime() - start);
+
+            return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+
+        } catch (TimeoutException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Fan Out Deadline", e.getClass(), name);
+
+            return Resulted.inException(e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Resulted.inException(e);
+
+        } catch (ExecutionException e) {
+            return Resulted.inException(e);
+
+        }
+    }
+}
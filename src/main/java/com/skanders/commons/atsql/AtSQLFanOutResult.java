@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Resulted;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of {@link AtSQLFanOut#execute()}.
+ * <p>
+ * Holds the result of every query under the name it was added with, in the
+ * order added. A query that failed, was rejected by the async executor or
+ * missed the deadline holds its exception while the others keep their rows.
+ */
+public class AtSQLFanOutResult
+{
+    private final Map<String, Resulted<List<Object>>> results;
+
+    AtSQLFanOutResult(Map<String, Resulted<List<Object>>> results)
+    {
+        this.results = Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @param name name the query was added with
+     * @param <T>  type of the mapped row
+     * @return the mapped rows of the query
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Resulted<List<T>> get(@Nonnull String name)
+    {
+        Resulted<List<Object>> resulted = results.get(name);
+
+        Verify.notNull(resulted, "no query named " + name);
+
+        return (Resulted<List<T>>) (Resulted<?>) resulted;
+    }
+
+    public Map<String, Resulted<List<Object>>> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * @return names of the queries that did not complete successfully
+     */
+    public List<String> getFailed()
+    {
+        List<String> failed = new ArrayList<>();
+
+        for (Map.Entry<String, Resulted<List<Object>>> result : results.entrySet())
+            if (result.getValue().notValid())
+                failed.add(result.getKey());
+
+        return failed;
+    }
+
+    /**
+     * @return true if any query failed
+     */
+    public boolean notValid()
+    {
+        return !getFailed().isEmpty();
+    }
+}
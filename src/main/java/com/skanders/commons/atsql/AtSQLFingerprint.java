@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes SQL text into a fingerprint shared by every execution of the
+ * same statement shape.
+ * <p>
+ * Comments are dropped, whitespace is collapsed, string and number literals
+ * become {@code ?} and placeholder lists such as {@code IN (?, ?, ?)} or
+ * multi-row {@code VALUES (?, ?), (?, ?)} collapse to a single entry.
+ */
+class AtSQLFingerprint
+{
+    private static final int MAX_CACHED = 10000;
+
+    private static final Pattern LIST   = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern TUPLES = Pattern.compile("\\(\\?\\+\\)(?:\\s*,\\s*\\(\\?\\+\\))+");
+
+    private static final ConcurrentHashMap<String, String> CACHE = new ConcurrentHashMap<>();
+
+    static String of(String query)
+    {
+        String fingerprint = CACHE.get(query);
+
+        if (fingerprint != null)
+            return fingerprint;
+
+        if (CACHE.size() >= MAX_CACHED)
+            CACHE.clear();
+
+        fingerprint = normalize(query);
+        CACHE.put(query, fingerprint);
+
+        return fingerprint;
+    }
+
+    static String normalize(String query)
+    {
+        StringBuilder builder = new StringBuilder(query.length());
+        int           length  = query.length();
+        int           i       = 0;
+
+        while (i < length) {
+            char c = query.charAt(i);
+
+            if (c == '-' && i + 1 < length && query.charAt(i + 1) == '-') {
+                while (i < length && query.charAt(i) != '\n')
+                    i++;
+                space(builder);
+
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+                int end = query.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+                space(builder);
+
+            } else if (c == '\'') {
+                i++;
+                while (i < length) {
+                    if (query.charAt(i) == '\'') {
+                        if (i + 1 < length && query.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                builder.append('?');
+
+            } else if (Character.isDigit(c) && !isIdentifierEnd(builder)) {
+                while (i < length && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '.'))
+                    i++;
+                builder.append('?');
+
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                space(builder);
+
+            } else {
+                builder.append(c);
+                i++;
+
+            }
+        }
+
+        String fingerprint = LIST.matcher(builder.toString().trim()).replaceAll("(?+)");
+
+        return TUPLES.matcher(fingerprint).replaceAll("(?+)+");
+    }
+
+    private static void space(StringBuilder builder)
+    {
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ')
+            builder.append(' ');
+    }
+
+    private static boolean isIdentifierEnd(StringBuilder builder)
+    {
+        if (builder.length() == 0)
+            return false;
+
+        char last = builder.charAt(builder.length() - 1);
+
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$' || last == '`' || last == '"';
+    }
+}
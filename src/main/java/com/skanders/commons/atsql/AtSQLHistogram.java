@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values.
+ * <p>
+ * Values are counted in log2 buckets, each split into four linear sub
+ * buckets, so any recorded value is reported within 25% of its true value
+ * using a fixed 256 slots regardless of range.
+ */
+class AtSQLHistogram
+{
+    private static final int SUB_BITS = 2;
+    private static final int SUB      = 1 << SUB_BITS;
+    private static final int BUCKETS  = 256;
+
+    private final AtomicLongArray counts;
+    private final LongAdder       count;
+    private final LongAdder       sum;
+    private final LongAccumulator max;
+
+    AtSQLHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count  = new LongAdder();
+        this.sum    = new LongAdder();
+        this.max    = new LongAccumulator(Math::max, 0);
+    }
+
+    void record(long value)
+    {
+        value = Math.max(value, 0);
+
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    AtSQLHistogramStats snapshot()
+    {
+        long[] buckets = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = counts.get(i);
+
+        return new AtSQLHistogramStats(buckets, count.sum(), sum.sum(), max.get());
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB)
+            return (int) value;
+
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+
+        return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    /**
+     * @return the largest value counted in the given bucket
+     */
+    static long upperBound(int index)
+    {
+        if (index < SUB)
+            return index;
+
+        int  exp   = (index >>> SUB_BITS) + SUB_BITS - 1;
+        long lower = (1L << exp) | ((long) (index & (SUB - 1)) << (exp - SUB_BITS));
+
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+/**
+ * Point in time statistics of an AtSQL histogram. Latencies are in
+ * nanoseconds, percentiles are approximated within 25%.
+ */
+public class AtSQLHistogramStats
+{
+    private final long[] buckets;
+    private final long   count;
+    private final long   sum;
+    private final long   max;
+
+    AtSQLHistogramStats(long[] buckets, long count, long sum, long max)
+    {
+        this.buckets = buckets;
+        this.count   = count;
+        this.sum     = sum;
+        this.max     = max;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getSum()
+    {
+        return sum;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value the given percentage of recorded values are at or
+     * below
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = 0;
+
+        for (long bucket : buckets)
+            total += bucket;
+
+        if (total == 0)
+            return 0;
+
+        long target     = Math.max((long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0), 1);
+        long cumulative = 0;
+
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+
+            if (cumulative >= target)
+                return Math.min(AtSQLHistogram.upperBound(i), max);
+        }
+
+        return max;
+    }
+
+    public long getP50()
+    {
+        return getPercentile(50.0);
+    }
+
+    public long getP95()
+    {
+        return getPercentile(95.0);
+    }
+
+    public long getP99()
+    {
+        return getPercentile(99.0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AtSQLHistogramStats{" +
+                "count=" + count +
+                ", mean=" + getMean() +
+                ", p50=" + getP50() +
+                ", p95=" + getP95() +
+                ", p99=" + getP99() +
+                ", max=" + max +
+                '}';
+    }
+}
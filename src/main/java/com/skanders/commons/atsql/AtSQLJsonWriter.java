@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Writes the rows of a {@link ResultSet} as a JSON array of objects, one row
+ * at a time.
+ * <p>
+ * Field names are serialized once from the column labels and every column
+ * is written with the typed getter matching its SQL type, so no row is ever
+ * held as a map or POJO.
+ */
+class AtSQLJsonWriter
+{
+    private final SerializableString[] names;
+    private final int[]                types;
+
+    private AtSQLJsonWriter(SerializableString[] names, int[] types)
+    {
+        this.names = names;
+        this.types = types;
+    }
+
+    static AtSQLJsonWriter forResultSet(ResultSet resultSet)
+            throws SQLException
+    {
+        ResultSetMetaData    metaData = resultSet.getMetaData();
+        SerializableString[] names    = new SerializableString[metaData.getColumnCount()];
+        int[]                types    = new int[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new SerializedString(metaData.getColumnLabel(i + 1));
+            types[i] = metaData.getColumnType(i + 1);
+
+            // INT UNSIGNED overflows an int, so it is written as a BIGINT
+            if (types[i] == Types.INTEGER && !metaData.isSigned(i + 1))
+                types[i] = Types.BIGINT;
+        }
+
+        return new AtSQLJsonWriter(names, types);
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    long writeRows(ResultSet resultSet, JsonGenerator generator)
+            throws SQLException, IOException
+    {
+        long rows = 0;
+
+        generator.writeStartArray();
+
+        while (resultSet.next()) {
+            rows++;
+            generator.writeStartObject();
+
+            for (int i = 0; i < names.length; i++) {
+                generator.writeFieldName(names[i]);
+                writeColumn(resultSet, i + 1, types[i], generator);
+            }
+
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+
+        return rows;
+    }
+
+    private static void writeColumn(ResultSet resultSet, int column, int type, JsonGenerator generator)
+            throws SQLException, IOException
+    {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                int intValue = resultSet.getInt(column);
+
+                if (resultSet.wasNull())
+                    generator.writeNull();
+                else
+                    generator.writeNumber(intValue);
+                break;
+
+            case Types.BIGINT:
+                long longValue = resultSet.getLong(column);
+
+                if (resultSet.wasNull())
+                    generator.writeNull();
+                else
+                    generator.writeNumber(longValue);
+                break;
+
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                double doubleValue = resultSet.getDouble(column);
+
+                if (resultSet.wasNull())
+                    generator.writeNull();
+                else
+                    generator.writeNumber(doubleValue);
+                break;
+
+            case Types.BIT:
+            case Types.BOOLEAN:
+                boolean booleanValue = resultSet.getBoolean(column);
+
+                if (resultSet.wasNull())
+                    generator.writeNull();
+                else
+                    generator.writeBoolean(booleanValue);
+                break;
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                BigDecimal decimalValue = resultSet.getBigDecimal(column);
+
+                if (decimalValue == null)
+                    generator.writeNull();
+                else
+                    generator.writeNumber(decimalValue);
+                break;
+
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                generator.writeString(resultSet.getString(column));
+                break;
+
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                byte[] bytesValue = resultSet.getBytes(column);
+
+                if (bytesValue == null)
+                    generator.writeNull();
+                else
+                    generator.writeBinary(bytesValue);
+                break;
+
+            default:
+                writeObject(resultSet.getObject(column), generator);
+        }
+    }
+
+    private static void writeObject(Object value, JsonGenerator generator)
+            throws IOException
+    {
+        if (value == null)
+            generator.writeNull();
+        else if (value instanceof Timestamp)
+            generator.writeString(((Timestamp) value).toLocalDateTime().toString());
+        else if (value instanceof Date)
+            generator.writeString(((Date) value).toLocalDate().toString());
+        else if (value instanceof Time)
+            generator.writeString(((Time) value).toLocalTime().toString());
+        else if (value instanceof TemporalAccessor)
+            generator.writeString(value.toString());
+        else
+            generator.writeObject(value);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records connection acquire wait, execute time and rows fetched per
+ * statement fingerprint, next to gauges read from the Hikari pool.
+ * <p>
+ * Recording is lock-free, the number of tracked fingerprints is capped and
+ * statements past the cap are counted under {@link #OTHER}.
+ */
+class AtSQLMetrics implements AtSQLMetricsMXBean
+{
+    static final String OTHER = "<other>";
+
+    private static final int MAX_STATEMENTS = 1000;
+
+    private final HikariDataSource                               hikariDataSource;
+    private final AtSQLHistogram                                 acquire;
+    private final ConcurrentHashMap<String, StatementHistograms> statements;
+
+    AtSQLMetrics(HikariDataSource hikariDataSource)
+    {
+        this.hikariDataSource = hikariDataSource;
+        this.acquire          = new AtSQLHistogram();
+        this.statements       = new ConcurrentHashMap<>();
+    }
+
+    void recordAcquire(long nanos)
+    {
+        acquire.record(nanos);
+    }
+
+    void recordAcquire(String query, long nanos)
+    {
+        statement(query).acquire.record(nanos);
+    }
+
+    void recordExecute(String query, long nanos)
+    {
+        statement(query).execute.record(nanos);
+    }
+
+    void recordRows(String query, long rows)
+    {
+        statement(query).rows.record(rows);
+    }
+
+    AtSQLMetricsSnapshot snapshot()
+    {
+        Map<String, AtSQLStatementStats> stats = new HashMap<>();
+
+        for (Map.Entry<String, StatementHistograms> entry : statements.entrySet()) {
+            StatementHistograms histograms = entry.getValue();
+
+            stats.put(entry.getKey(), new AtSQLStatementStats(entry.getKey(),
+                    histograms.acquire.snapshot(),
+                    histograms.execute.snapshot(),
+                    histograms.rows.snapshot()));
+        }
+
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+
+        return new AtSQLMetricsSnapshot(
+                pool == null ? 0 : pool.getActiveConnections(),
+                pool == null ? 0 : pool.getIdleConnections(),
+                pool == null ? 0 : pool.getTotalConnections(),
+                pool == null ? 0 : pool.getThreadsAwaitingConnection(),
+                acquire.snapshot(),
+                stats);
+    }
+
+    @Override
+    public int getActiveConnections()
+    {
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections()
+    {
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections()
+    {
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+
+        return pool == null ? 0 : pool.getTotalConnections();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection()
+    {
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public long getAcquireP50Nanos()
+    {
+        return acquire.snapshot().getP50();
+    }
+
+    @Override
+    public long getAcquireP99Nanos()
+    {
+        return acquire.snapshot().getP99();
+    }
+
+    @Override
+    public long getAcquireMaxNanos()
+    {
+        return acquire.snapshot().getMax();
+    }
+
+    @Override
+    public Map<String, Long> getExecuteP50NanosByStatement()
+    {
+        Map<String, Long> values = new HashMap<>();
+
+        for (Map.Entry<String, StatementHistograms> entry : statements.entrySet())
+            values.put(entry.getKey(), entry.getValue().execute.snapshot().getP50());
+
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getExecuteP99NanosByStatement()
+    {
+        Map<String, Long> values = new HashMap<>();
+
+        for (Map.Entry<String, StatementHistograms> entry : statements.entrySet())
+            values.put(entry.getKey(), entry.getValue().execute.snapshot().getP99());
+
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getExecutionsByStatement()
+    {
+        Map<String, Long> values = new HashMap<>();
+
+        for (Map.Entry<String, StatementHistograms> entry : statements.entrySet())
+            values.put(entry.getKey(), entry.getValue().execute.snapshot().getCount());
+
+        return values;
+    }
+
+    private StatementHistograms statement(String query)
+    {
+        String              fingerprint = AtSQLFingerprint.of(query);
+        StatementHistograms histograms  = statements.get(fingerprint);
+
+        if (histograms != null)
+            return histograms;
+
+        if (statements.size() >= MAX_STATEMENTS)
+            fingerprint = OTHER;
+
+        return statements.computeIfAbsent(fingerprint, f -> new StatementHistograms());
+    }
+
+    private static final class StatementHistograms
+    {
+        private final AtSQLHistogram acquire = new AtSQLHistogram();
+        private final AtSQLHistogram execute = new AtSQLHistogram();
+        private final AtSQLHistogram rows    = new AtSQLHistogram();
+    }
+}
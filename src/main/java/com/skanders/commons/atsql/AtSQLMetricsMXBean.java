@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link AtSQLMetricsSnapshot}, registered by {@link
+ * AtSQLFactory#withMetricsJmx()}. Latencies are in nanoseconds.
+ */
+public interface AtSQLMetricsMXBean
+{
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getThreadsAwaitingConnection();
+
+    long getAcquireP50Nanos();
+
+    long getAcquireP99Nanos();
+
+    long getAcquireMaxNanos();
+
+    Map<String, Long> getExecuteP50NanosByStatement();
+
+    Map<String, Long> getExecuteP99NanosByStatement();
+
+    Map<String, Long> getExecutionsByStatement();
+}
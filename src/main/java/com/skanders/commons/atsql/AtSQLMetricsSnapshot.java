@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point in time view of the connection pool and of the statements executed
+ * by an {@link AtSQL} instance.
+ */
+public class AtSQLMetricsSnapshot
+{
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int totalConnections;
+    private final int threadsAwaitingConnection;
+
+    private final AtSQLHistogramStats              acquire;
+    private final Map<String, AtSQLStatementStats> statements;
+
+    AtSQLMetricsSnapshot(int activeConnections, int idleConnections, int totalConnections,
+                         int threadsAwaitingConnection, AtSQLHistogramStats acquire,
+                         Map<String, AtSQLStatementStats> statements)
+    {
+        this.activeConnections         = activeConnections;
+        this.idleConnections           = idleConnections;
+        this.totalConnections          = totalConnections;
+        this.threadsAwaitingConnection = threadsAwaitingConnection;
+
+        this.acquire    = acquire;
+        this.statements = Collections.unmodifiableMap(statements);
+    }
+
+    public int getActiveConnections()
+    {
+        return activeConnections;
+    }
+
+    public int getIdleConnections()
+    {
+        return idleConnections;
+    }
+
+    public int getTotalConnections()
+    {
+        return totalConnections;
+    }
+
+    public int getThreadsAwaitingConnection()
+    {
+        return threadsAwaitingConnection;
+    }
+
+    /**
+     * @return nanoseconds spent waiting on the pool for every connection
+     */
+    public AtSQLHistogramStats getAcquireNanos()
+    {
+        return acquire;
+    }
+
+    /**
+     * @return statistics keyed by statement fingerprint
+     */
+    public Map<String, AtSQLStatementStats> getStatements()
+    {
+        return statements;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AtSQLMetricsSnapshot{" +
+                "activeConnections=" + activeConnections +
+                ", idleConnections=" + idleConnections +
+                ", totalConnections=" + totalConnections +
+                ", threadsAwaitingConnection=" + threadsAwaitingConnection +
+                ", acquire=" + acquire +
+                ", statements=" + statements.size() +
+                '}';
+    }
+}
@@ -26,7 +26,9 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class AtSQLMultiBatch
 {
@@ -35,21 +37,50 @@ public class AtSQLMultiBatch
     private final AtSQL                atSQL;
     private final List<String>         queryList;
     private final List<AtSQLParamList> atSQLParamList;
+    private final AtSQLTransaction     atSQLTransaction;
 
     private AtSQLParamList singleList;
 
     private boolean closed;
+    private boolean groupAll;
     private int     listIndex;
 
     AtSQLMultiBatch(@Nonnull AtSQL atSQL)
+    {
+        this(atSQL, null);
+    }
+
+    AtSQLMultiBatch(@Nonnull AtSQL atSQL, AtSQLTransaction atSQLTransaction)
     {
         Verify.notNull(atSQL, "atSQL cannot be null.");
 
-        this.atSQL          = atSQL;
-        this.queryList      = new ArrayList<>();
-        this.atSQLParamList = new ArrayList<>();
-        this.closed         = false;
-        this.listIndex      = -1;
+        this.atSQL            = atSQL;
+        this.atSQLTransaction = atSQLTransaction;
+        this.queryList        = new ArrayList<>();
+        this.atSQLParamList   = new ArrayList<>();
+        this.closed           = false;
+        this.groupAll         = false;
+        this.listIndex        = -1;
+    }
+
+    /**
+     * Groups every entry sharing the same SQL text into a single JDBC batch,
+     * not only consecutive ones.
+     * <p>
+     * Entries then no longer execute in the order they were set, only use
+     * when the statements do not depend on each other. The returned update
+     * counts keep the order of the entries either way, though larger groups
+     * are more likely to be rewritten by the driver (such as MySQL's {@code
+     * rewriteBatchedStatements}) and report {@link
+     * java.sql.Statement#SUCCESS_NO_INFO} instead of exact counts.
+     *
+     * @return this instance of AtSQLMultiBatch
+     */
+    public AtSQLMultiBatch withFullGrouping()
+    {
+        this.groupAll = true;
+
+        return this;
     }
 
     public AtSQLMultiBatch setQuery(String query)
@@ -88,6 +119,72 @@ public class AtSQLMultiBatch
         return this;
     }
 
+    public AtSQLMultiBatch setInt(int param)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setInt(param);
+
+        return this;
+    }
+
+    public AtSQLMultiBatch setLong(long param)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setLong(param);
+
+        return this;
+    }
+
+    public AtSQLMultiBatch setDouble(double param)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setDouble(param);
+
+        return this;
+    }
+
+    public AtSQLMultiBatch setString(String param)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setString(param);
+
+        return this;
+    }
+
+    public AtSQLMultiBatch setBytes(byte[] param)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setBytes(param);
+
+        return this;
+    }
+
+    public AtSQLMultiBatch setNull(int type)
+    {
+        Verify.notTrue(listIndex == -1, "Must set a query before setting params!");
+
+        atSQLParamList.get(listIndex).setNull(type);
+
+        return this;
+    }
+
+    /**
+     * Executes every entry in a single transaction.
+     * <p>
+     * Consecutive entries sharing the same SQL text (or all of them when
+     * {@link #withFullGrouping()} is set) are sent as one JDBC batch on a
+     * single prepared statement. A driver rewriting batches, such as MySQL
+     * with {@code rewriteBatchedStatements}, may report {@link
+     * java.sql.Statement#SUCCESS_NO_INFO} for the entries of a group instead
+     * of their exact update counts.
+     *
+     * @return the update count of every entry in the order they were set
+     */
     public Resulted<int[]> executeBatch()
     {
         Verify.notTrue(closed, "SQLQuery cannot be called after closed");
@@ -97,29 +194,94 @@ public class AtSQLMultiBatch
 
         LOG.debug(LogPattern.ENTER, "Database Execute Update");
 
-        try (AtSQLConnection atSQLConnection = atSQL.newConnection()) {
+        AtSQLConnection atSQLConnection = null;
 
+        try {
+            atSQLConnection = atSQLTransaction != null ? atSQLTransaction.connection() : atSQL.newConnection();
             atSQLConnection.setAutoCommitOff();
 
             int[] rowsUpdated = new int[queryList.size()];
 
-            for (int i = 0; i < queryList.size(); i++) {
-                AtSQLStatement atSQLStatement = atSQLConnection.preparedStatement(queryList.get(i));
-
-                atSQLStatement.setParams(atSQLParamList.get(i));
-
-                rowsUpdated[i] = atSQLStatement.executeUpdate();
-            }
+            for (int[] group : groups())
+                executeGroup(atSQLConnection, group, rowsUpdated);
 
             atSQLConnection.commit();
 
+            for (String query : queryList)
+                if (atSQLTransaction != null)
+                    atSQLTransaction.invalidateOnCommit(query, new String[0]);
+                else
+                    atSQL.invalidateWrite(query);
+
             return Resulted.inValue(rowsUpdated);
 
         } catch (SQLException e) {
             LOG.error(LogPattern.EXIT_FAIL, "Prepare Database Update Execution", e.getClass(), e.getMessage());
 
+            if (atSQLConnection != null)
+                atSQLConnection.rollback();
+
             return Resulted.inException(e);
 
+        } finally {
+            Verify.closed(atSQLConnection);
+
+        }
+    }
+
+    private List<int[]> groups()
+    {
+        List<int[]> groups = new ArrayList<>();
+
+        if (groupAll) {
+            Map<String, List<Integer>> indexes = new LinkedHashMap<>();
+
+            for (int i = 0; i < queryList.size(); i++)
+                indexes.computeIfAbsent(queryList.get(i), query -> new ArrayList<>()).add(i);
+
+            for (List<Integer> index : indexes.values())
+                groups.add(index.stream().mapToInt(Integer::intValue).toArray());
+
+        } else {
+            int start = 0;
+
+            while (start < queryList.size()) {
+                int end = start + 1;
+
+                while (end < queryList.size() && queryList.get(end).equals(queryList.get(start)))
+                    end++;
+
+                int[] group = new int[end - start];
+                for (int i = 0; i < group.length; i++)
+                    group[i] = start + i;
+
+                groups.add(group);
+                start = end;
+            }
+        }
+
+        return groups;
+    }
+
+    private void executeGroup(AtSQLConnection atSQLConnection, int[] group, int[] rowsUpdated)
+            throws SQLException
+    {
+        try (AtSQLStatement atSQLStatement = atSQLConnection.preparedStatement(queryList.get(group[0]))) {
+
+            if (group.length == 1) {
+                rowsUpdated[group[0]] = atSQLStatement
+                        .setParams(atSQLParamList.get(group[0]))
+                        .executeUpdate();
+                return;
+            }
+
+            for (int index : group)
+                atSQLStatement.setBatch(atSQLParamList.get(index));
+
+            int[] batchUpdates = atSQLStatement.executeBatch();
+
+            for (int i = 0; i < group.length; i++)
+                rowsUpdated[group[i]] = batchUpdates[i];
         }
     }
 }
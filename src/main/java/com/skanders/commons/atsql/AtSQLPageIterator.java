@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.result.Resulted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lazy iterator over the pages of an {@link AtSQLPaginator}.
+ * <p>
+ * Every page is read on its own pooled connection which is released before
+ * the page is returned, so no connection is held between pages. A page
+ * shorter than the page size ends the iteration without another round trip.
+ * Failures are thrown as {@link SkandersException}; {@link #getLastKey()}
+ * can be kept as a checkpoint to resume through {@link
+ * AtSQLPaginator#withStartKey(Object)}.
+ *
+ * @param <T> type of the mapped row
+ */
+public class AtSQLPageIterator<T> implements Iterator<List<T>>, AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLPageIterator.class);
+
+    private final AtSQLPaginator   paginator;
+    private final MapperFactory<T> mapperFactory;
+
+    private CompletableFuture<Resulted<Page<T>>> prefetched;
+    private Page<T>                              page;
+    private Object                               lastKey;
+    private boolean                              first;
+    private boolean                              exhausted;
+
+    AtSQLPageIterator(AtSQLPaginator paginator, MapperFactory<T> mapperFactory)
+    {
+        this.paginator     = paginator;
+        this.mapperFactory = mapperFactory;
+
+        this.prefetched = null;
+        this.page       = null;
+        this.lastKey    = paginator.startKey();
+        this.first      = true;
+        this.exhausted  = false;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (page != null)
+            return true;
+
+        if (exhausted)
+            return false;
+
+        Resulted<Page<T>> resulted = prefetched != null ? prefetched.join() : readPage(lastKey, first);
+        prefetched = null;
+
+        if (resulted.notValid()) {
+            exhausted = true;
+            throw resulted.toThrowable();
+        }
+
+        first = false;
+        page  = resulted.value();
+
+        if (page.rows.size() < paginator.pageSize())
+            exhausted = true;
+        else if (paginator.isPrefetch())
+            prefetch(page.lastKey);
+
+        if (page.rows.isEmpty()) {
+            page = null;
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public List<T> next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        List<T> rows = page.rows;
+
+        lastKey = page.lastKey;
+        page    = null;
+
+        return rows;
+    }
+
+    /**
+     * @return key of the last row of the last page returned, or the start
+     * key if no page was returned yet
+     */
+    public Object getLastKey()
+    {
+        return lastKey;
+    }
+
+    /**
+     * Stops the iteration, a page being prefetched is left to complete and
+     * releases its connection on its own.
+     */
+    @Override
+    public void close()
+    {
+        exhausted  = true;
+        page       = null;
+        prefetched = null;
+    }
+
+    /**
+     * Reads the next page in the background unless the async executor is
+     * saturated, in which case it is left null and read on demand.
+     */
+    private void prefetch(Object key)
+    {
+        prefetched = paginator.atSQL().trySupplyAsync(() -> readPage(key, false));
+    }
+
+    private Resulted<Page<T>> readPage(Object key, boolean firstPage)
+    {
+        try (Resulted<AtSQLResult> resulted = paginator.pageQuery(key, firstPage).executeQuery()) {
+            if (resulted.notValid())
+                return Resulted.inResulted(resulted);
+
+            ResultSet         resultSet = resulted.value().getResultSet();
+            AtSQLRowMapper<T> rowMapper = mapperFactory.forResultSet(resultSet);
+            int               keyIndex  = resultSet.findColumn(paginator.keyColumn());
+            List<T>           rows      = new ArrayList<>(paginator.pageSize());
+            Object            pageKey   = key;
+
+            while (resultSet.next()) {
+                rows.add(rowMapper.map(resultSet));
+                pageKey = resultSet.getObject(keyIndex);
+            }
+
+            resulted.value().countRows(rows.size());
+
+            return Resulted.inValue(new Page<>(rows, pageKey));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Query Page", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    @FunctionalInterface
+    interface MapperFactory<T>
+    {
+        AtSQLRowMapper<T> forResultSet(ResultSet resultSet) throws SQLException;
+    }
+
+    private static class Page<T>
+    {
+        private final List<T> rows;
+        private final Object  lastKey;
+
+        private Page(List<T> rows, Object lastKey)
+        {
+            this.rows    = rows;
+            this.lastKey = lastKey;
+        }
+    }
+}
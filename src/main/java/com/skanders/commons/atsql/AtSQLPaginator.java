@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.Verify;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Keyset pagination over a query, created by {@link AtSQL#paginate(String,
+ * String, int)}.
+ * <p>
+ * Each page appends {@code WHERE key > ? ORDER BY key LIMIT ?} to the query,
+ * the existing WHERE condition kept in parentheses, carrying the last key of
+ * the previous page forward so every page costs the same no matter how deep
+ * the job goes. A query with a top level GROUP BY, HAVING, DISTINCT, ORDER
+ * BY, LIMIT or set operation is instead wrapped as {@code SELECT * FROM
+ * (sql)}, which is materialized on every page and fails on duplicate column
+ * names. The key column must be unique and returned by the query, it may be
+ * qualified by its table such as {@code s.id} and is read back by its
+ * unqualified name.
+ */
+public class AtSQLPaginator
+{
+    private static final Pattern KEY_COLUMN = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*\\.)?[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final int NO_WHERE       = -1;
+    private static final int NOT_APPENDABLE = -2;
+
+    private static final Pattern WRAPPED = Pattern.compile(
+            "GROUP|HAVING|DISTINCT|ORDER|LIMIT|OFFSET|FETCH|UNION|EXCEPT|INTERSECT|WINDOW|FOR|LOCK|INTO");
+
+    private final AtSQL  atSQL;
+    private final String firstQuery;
+    private final String nextQuery;
+    private final String keyColumn;
+    private final int    pageSize;
+
+    private Object[] params;
+    private Object   startKey;
+    private boolean  prefetch;
+
+    AtSQLPaginator(@Nonnull AtSQL atSQL, @Nonnull String query, @Nonnull String keyColumn, int pageSize)
+    {
+        Verify.notNull(query, "query cannot be null.");
+        Verify.notNull(keyColumn, "keyColumn cannot be null.");
+        Verify.isTrue(KEY_COLUMN.matcher(keyColumn).matches(), "keyColumn must be a plain or qualified column name.");
+        Verify.isTrue(pageSize > 0, "pageSize must be greater than 0.");
+
+        String[] queries = pageQueries(query, keyColumn);
+
+        this.atSQL      = atSQL;
+        this.firstQuery = queries[0];
+        this.nextQuery  = queries[1];
+        this.keyColumn  = keyColumn.substring(keyColumn.lastIndexOf('.') + 1);
+        this.pageSize   = pageSize;
+
+        this.params   = new Object[0];
+        this.startKey = null;
+        this.prefetch = false;
+    }
+
+    /**
+     * @param params params bound to the wrapped query on every page
+     * @return this instance of AtSQLPaginator
+     */
+    public AtSQLPaginator setList(Object... params)
+    {
+        this.params = Arrays.copyOf(params, params.length);
+
+        return this;
+    }
+
+    /**
+     * Starts after the given key instead of at the first row.
+     *
+     * @param startKey key of the last row already processed
+     * @return this instance of AtSQLPaginator
+     */
+    public AtSQLPaginator withStartKey(Object startKey)
+    {
+        this.startKey = startKey;
+
+        return this;
+    }
+
+    /**
+     * Reads the next page on the AtSQL async executor while the current one
+     * is processed.
+     *
+     * @return this instance of AtSQLPaginator
+     */
+    public AtSQLPaginator withPrefetch()
+    {
+        this.prefetch = true;
+
+        return this;
+    }
+
+    /**
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return a lazy iterator over the pages
+     */
+    public <T> AtSQLPageIterator<T> iterator(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        Verify.notNull(rowMapper, "rowMapper cannot be null.");
+
+        return new AtSQLPageIterator<>(this, resultSet -> rowMapper);
+    }
+
+    /**
+     * @param type class each row is mapped to
+     * @param <T>  type of the mapped row
+     * @return a lazy iterator over the pages
+     * @see AtSQLResult#mapTo(Class)
+     */
+    public <T> AtSQLPageIterator<T> iterator(@Nonnull Class<T> type)
+    {
+        Verify.notNull(type, "type cannot be null.");
+
+        return new AtSQLPageIterator<>(this, resultSet -> AtSQLBeanMapper.forResultSet(resultSet, type));
+    }
+
+    /**
+     * @return the SQL of the first page and of the pages after a key
+     */
+    static String[] pageQueries(String query, String keyColumn)
+    {
+        String inner = query.trim();
+
+        if (inner.endsWith(";"))
+            inner = inner.substring(0, inner.length() - 1);
+
+        String order = "\nORDER BY " + keyColumn + " LIMIT ?";
+        int    where = appendableWhere(inner);
+
+        if (where == NOT_APPENDABLE) {
+            String label  = keyColumn.substring(keyColumn.lastIndexOf('.') + 1);
+            String select = "SELECT * FROM (" + inner + "\n) atsql_page ";
+
+            return new String[]{
+                    select + "ORDER BY atsql_page." + label + " LIMIT ?",
+                    select + "WHERE atsql_page." + label + " > ? ORDER BY atsql_page." + label + " LIMIT ?"};
+        }
+
+        if (where == NO_WHERE)
+            return new String[]{inner + order, inner + "\nWHERE " + keyColumn + " > ?" + order};
+
+        String conditioned = inner.substring(0, where) + " (" + inner.substring(where).trim() + "\n)";
+
+        return new String[]{conditioned + order, conditioned + " AND " + keyColumn + " > ?" + order};
+    }
+
+    /**
+     * Scans the top level of the query, outside parentheses, quotes and
+     * comments.
+     *
+     * @return the index right after its WHERE, {@link #NO_WHERE} when it has
+     * none, or {@link #NOT_APPENDABLE} when it must be wrapped
+     */
+    private static int appendableWhere(String query)
+    {
+        int length = query.length();
+        int depth  = 0;
+        int where  = NO_WHERE;
+        int i      = 0;
+        int words  = 0;
+
+        while (i < length) {
+            char c = query.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(query, i, c);
+
+            } else if (c == '-' && i + 1 < length && query.charAt(i + 1) == '-') {
+                int end = query.indexOf('\n', i);
+                i = end == -1 ? length : end;
+
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+                int end = query.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+
+            } else if (c == '(') {
+                depth++;
+                i++;
+
+            } else if (c == ')') {
+                depth--;
+                i++;
+
+            } else if (Character.isLetter(c)) {
+                int end = i + 1;
+
+                while (end < length && (Character.isLetterOrDigit(query.charAt(end)) || query.charAt(end) == '_'))
+                    end++;
+
+                if (depth == 0) {
+                    String word = query.substring(i, end).toUpperCase(Locale.ROOT);
+
+                    if (words++ == 0 && !word.equals("SELECT"))
+                        return NOT_APPENDABLE;
+
+                    if (WRAPPED.matcher(word).matches())
+                        return NOT_APPENDABLE;
+
+                    if (word.equals("WHERE") && where == NO_WHERE)
+                        where = end;
+                }
+
+                i = end;
+
+            } else {
+                i++;
+
+            }
+        }
+
+        return where;
+    }
+
+    private static int skipQuoted(String query, int start, char quote)
+    {
+        int i = start + 1;
+
+        while (i < query.length()) {
+            char c = query.charAt(i);
+
+            if (c == '\\' && quote == '\'') {
+                i += 2;
+            } else if (c == quote && i + 1 < query.length() && query.charAt(i + 1) == quote) {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+
+        return query.length();
+    }
+
+    AtSQLQuery pageQuery(Object lastKey, boolean first)
+    {
+        AtSQLQuery query = atSQL.createQuery(first && lastKey == null ? firstQuery : nextQuery).setList(params);
+
+        if (!first || lastKey != null)
+            query.set(lastKey);
+
+        return query.setInt(pageSize);
+    }
+
+    AtSQL atSQL()
+    {
+        return atSQL;
+    }
+
+    String keyColumn()
+    {
+        return keyColumn;
+    }
+
+    int pageSize()
+    {
+        return pageSize;
+    }
+
+    Object startKey()
+    {
+        return startKey;
+    }
+
+    boolean isPrefetch()
+    {
+        return prefetch;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.result.Resulted;
+
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link AtSQLBatch#executeParallel(int)}.
+ * <p>
+ * Holds the result of every partition, each ran in its own transaction, and
+ * the update counts of every row merged back in the order the rows were
+ * added. Rows of a partition that failed and was rolled back are reported
+ * as {@link Statement#EXECUTE_FAILED}.
+ */
+public class AtSQLParallelResult
+{
+    private final List<Resulted<int[]>> partitions;
+    private final int[]                 updateCounts;
+
+    AtSQLParallelResult(List<Resulted<int[]>> partitions, int[] updateCounts)
+    {
+        this.partitions   = Collections.unmodifiableList(partitions);
+        this.updateCounts = updateCounts;
+    }
+
+    /**
+     * @return the result of every partition that ran, valid partitions hold
+     * the update counts of the rows they executed
+     */
+    public List<Resulted<int[]>> getPartitions()
+    {
+        return partitions;
+    }
+
+    /**
+     * @return the update counts of every row in the order they were added
+     */
+    public int[] getUpdateCounts()
+    {
+        return updateCounts;
+    }
+
+    public int getFailedPartitions()
+    {
+        int failed = 0;
+
+        for (Resulted<int[]> partition : partitions)
+            if (partition.notValid())
+                failed++;
+
+        return failed;
+    }
+
+    /**
+     * @return true if any partition failed
+     */
+    public boolean notValid()
+    {
+        return getFailedPartitions() > 0;
+    }
+}
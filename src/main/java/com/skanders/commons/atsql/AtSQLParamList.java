@@ -16,24 +16,56 @@
 
 package com.skanders.commons.atsql;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * Columnar storage of bound parameters.
+ * <p>
+ * Each parameter is stored as a kind plus either a primitive slot or an
+ * object slot, primitives are never boxed. Ints, longs and doubles (as raw
+ * bits) share the same {@code long} slot. A single list may hold the
+ * parameters of many batch rows back to back.
+ */
 class AtSQLParamList
 {
-    private List<AtSQLParam> atSQLParamList;
+    static final byte OBJECT = 0;
+    static final byte TYPED  = 1;
+    static final byte INT    = 2;
+    static final byte LONG   = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte BYTES  = 6;
+    static final byte NULL   = 7;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private byte[]   kinds;
+    private long[]   primitives;
+    private Object[] objects;
+    private int[]    types;
+    private int      size;
 
     AtSQLParamList()
     {
-        this.atSQLParamList = new ArrayList<>();
+        this(DEFAULT_CAPACITY);
+    }
+
+    private AtSQLParamList(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+
+        this.kinds      = new byte[capacity];
+        this.primitives = new long[capacity];
+        this.objects    = new Object[capacity];
+        this.types      = null;
+        this.size       = 0;
     }
 
     AtSQLParamList(Object... values)
     {
-        this.atSQLParamList = new ArrayList<>();
+        this(values.length);
 
-        for (Object value : values)
-            atSQLParamList.add(new AtSQLParam(value));
+        setList(values);
     }
 
     public static AtSQLParamList create()
@@ -41,24 +73,228 @@ class AtSQLParamList
         return new AtSQLParamList();
     }
 
+    static AtSQLParamList withCapacity(int capacity)
+    {
+        return new AtSQLParamList(capacity);
+    }
+
     public void setPair(int type, Object value)
     {
-        atSQLParamList.add(new AtSQLParam(type, value));
+        int index = next(TYPED);
+
+        objects[index] = value;
+        setType(index, type);
     }
 
     public void set(Object value)
     {
-        atSQLParamList.add(new AtSQLParam(value));
+        int index = next(OBJECT);
+
+        objects[index] = value;
     }
 
     public void setList(Object... values)
     {
+        ensureCapacity(size + values.length);
+
         for (Object value : values)
-            atSQLParamList.add(new AtSQLParam(value));
+            objects[next(OBJECT)] = value;
+    }
+
+    void setInt(int value)
+    {
+        int index = next(INT);
+
+        primitives[index] = value;
+    }
+
+    void setLong(long value)
+    {
+        int index = next(LONG);
+
+        primitives[index] = value;
     }
 
-    List<AtSQLParam> getList()
+    void setDouble(double value)
     {
-        return atSQLParamList;
+        int index = next(DOUBLE);
+
+        primitives[index] = Double.doubleToRawLongBits(value);
+    }
+
+    void setString(String value)
+    {
+        int index = next(STRING);
+
+        objects[index] = value;
+    }
+
+    void setBytes(byte[] value)
+    {
+        int index = next(BYTES);
+
+        objects[index] = value;
+    }
+
+    void setNull(int type)
+    {
+        setType(next(NULL), type);
+    }
+
+    void addAll(AtSQLParamList other, int from, int to)
+    {
+        int count = to - from;
+
+        ensureCapacity(size + count);
+
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.primitives, from, primitives, size, count);
+        System.arraycopy(other.objects, from, objects, size, count);
+
+        if (other.types != null) {
+            ensureTypes();
+            System.arraycopy(other.types, from, types, size, count);
+        }
+
+        size += count;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    byte kind(int index)
+    {
+        return kinds[index];
+    }
+
+    int getInt(int index)
+    {
+        return (int) primitives[index];
+    }
+
+    long getLong(int index)
+    {
+        return primitives[index];
+    }
+
+    double getDouble(int index)
+    {
+        return Double.longBitsToDouble(primitives[index]);
+    }
+
+    Object getObject(int index)
+    {
+        return objects[index];
+    }
+
+    int getType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * Returns the parameter as an object, boxing primitives. Only meant for
+     * paths that need a copy of the value such as logging or cache keys.
+     */
+    Object getValue(int index)
+    {
+        switch (kinds[index]) {
+            case INT:
+                return getInt(index);
+            case LONG:
+                return getLong(index);
+            case DOUBLE:
+                return getDouble(index);
+            case NULL:
+                return null;
+            default:
+                return objects[index];
+        }
+    }
+
+    void clear()
+    {
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+
+    long estimateSize()
+    {
+        return estimateSize(0, size);
+    }
+
+    long estimateSize(int from, int to)
+    {
+        long estimate = 0;
+
+        for (int i = from; i < to; i++) {
+            switch (kinds[i]) {
+                case INT:
+                case LONG:
+                case DOUBLE:
+                    estimate += 8;
+                    break;
+                case NULL:
+                    estimate += 1;
+                    break;
+                default:
+                    estimate += estimateSize(objects[i]);
+            }
+        }
+
+        return estimate;
+    }
+
+    static long estimateSize(Object value)
+    {
+        if (value == null)
+            return 1;
+        else if (value instanceof CharSequence)
+            return ((CharSequence) value).length() + 4;
+        else if (value instanceof byte[])
+            return ((byte[]) value).length + 4;
+        else if (value instanceof Number || value instanceof Boolean)
+            return 8;
+        else
+            return 16;
+    }
+
+    private int next(byte kind)
+    {
+        ensureCapacity(size + 1);
+
+        kinds[size] = kind;
+
+        return size++;
+    }
+
+    private void setType(int index, int type)
+    {
+        ensureTypes();
+
+        types[index] = type;
+    }
+
+    private void ensureTypes()
+    {
+        if (types == null)
+            types = new int[kinds.length];
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= kinds.length)
+            return;
+
+        int newCapacity = Math.max(kinds.length * 2, capacity);
+
+        kinds      = Arrays.copyOf(kinds, newCapacity);
+        primitives = Arrays.copyOf(primitives, newCapacity);
+        objects    = Arrays.copyOf(objects, newCapacity);
+
+        if (types != null)
+            types = Arrays.copyOf(types, newCapacity);
     }
 }
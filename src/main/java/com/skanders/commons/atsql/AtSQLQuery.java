@@ -26,6 +26,10 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class AtSQLQuery
 {
@@ -35,17 +39,51 @@ public class AtSQLQuery
     private final AtSQL          atSQL;
     private final AtSQLParamList atSQLParamList;
 
+    private final AtSQLTransaction atSQLTransaction;
+
     private boolean closed;
+    private boolean streaming;
+    private boolean readQuery;
+    private int     fetchSize;
+    private int     queryTimeout;
+
+    private long     cacheTtl;
+    private String[] cacheTables;
+    private String[] invalidates;
 
     AtSQLQuery(@Nonnull String query, @Nonnull AtSQL atSQL)
+    {
+        this(query, atSQL, false);
+    }
+
+    AtSQLQuery(@Nonnull String query, @Nonnull AtSQL atSQL, boolean readQuery)
+    {
+        this(query, atSQL, readQuery, null);
+    }
+
+    AtSQLQuery(@Nonnull String query, @Nonnull AtSQL atSQL, @Nonnull AtSQLTransaction atSQLTransaction)
+    {
+        this(query, atSQL, false, atSQLTransaction);
+    }
+
+    private AtSQLQuery(String query, AtSQL atSQL, boolean readQuery, AtSQLTransaction atSQLTransaction)
     {
         Verify.notNull(query, "query cannot be null.");
         Verify.notNull(atSQL, "atSQL cannot be null.");
 
-        this.query          = query;
-        this.atSQL          = atSQL;
-        this.atSQLParamList = new AtSQLParamList();
-        this.closed         = false;
+        this.query            = query;
+        this.atSQL            = atSQL;
+        this.atSQLParamList   = new AtSQLParamList();
+        this.atSQLTransaction = atSQLTransaction;
+        this.closed           = false;
+        this.streaming        = false;
+        this.readQuery        = readQuery;
+        this.fetchSize        = 0;
+        this.queryTimeout     = 0;
+
+        this.cacheTtl    = 0;
+        this.cacheTables = new String[0];
+        this.invalidates = new String[0];
     }
 
     public AtSQLQuery setList(Object... params)
@@ -69,6 +107,153 @@ public class AtSQLQuery
         return this;
     }
 
+    public AtSQLQuery setInt(int param)
+    {
+        atSQLParamList.setInt(param);
+
+        return this;
+    }
+
+    public AtSQLQuery setLong(long param)
+    {
+        atSQLParamList.setLong(param);
+
+        return this;
+    }
+
+    public AtSQLQuery setDouble(double param)
+    {
+        atSQLParamList.setDouble(param);
+
+        return this;
+    }
+
+    public AtSQLQuery setString(String param)
+    {
+        atSQLParamList.setString(param);
+
+        return this;
+    }
+
+    public AtSQLQuery setBytes(byte[] param)
+    {
+        atSQLParamList.setBytes(param);
+
+        return this;
+    }
+
+    public AtSQLQuery setNull(int type)
+    {
+        atSQLParamList.setNull(type);
+
+        return this;
+    }
+
+    boolean hasQueryTimeout()
+    {
+        return queryTimeout != 0;
+    }
+
+    AtSQLQuery addParams(AtSQLParamList paramList, int from, int to)
+    {
+        atSQLParamList.addAll(paramList, from, to);
+
+        return this;
+    }
+
+    /**
+     * Cancels the statement once it runs longer than the timeout, rounded up
+     * to whole seconds as JDBC requires.
+     *
+     * @param timeout longest the statement may run
+     * @return this instance of AtSQLQuery
+     */
+    public AtSQLQuery withQueryTimeout(@Nonnull Duration timeout)
+    {
+        Verify.notNull(timeout, "timeout cannot be null.");
+        Verify.isTrue(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive.");
+
+        this.queryTimeout = (int) Math.min((timeout.toMillis() + 999) / 1000, Integer.MAX_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Hints the driver to fetch the given number of rows per round trip.
+     * <p>
+     * Only applies to {@link #executeQuery()}. A value of 0 keeps the driver
+     * default. Note MySQL only streams rows when given {@link
+     * Integer#MIN_VALUE} (or when {@code useCursorFetch} is enabled).
+     *
+     * @param fetchSize number of rows per fetch
+     * @return this instance of AtSQLQuery
+     */
+    public AtSQLQuery withFetchSize(int fetchSize)
+    {
+        Verify.isTrue(fetchSize >= 0 || fetchSize == Integer.MIN_VALUE, "fetchSize cannot be negative.");
+
+        this.fetchSize = fetchSize;
+
+        return this;
+    }
+
+    /**
+     * Executes {@link #executeQuery()} as a forward-only, read-only cursor.
+     * <p>
+     * Auto commit is turned off for the life of the result, as drivers such
+     * as PostgreSQL only honour the fetch size inside a transaction. Combined
+     * with {@link #withFetchSize(int)} and {@link AtSQLResult#stream(AtSQLRowMapper)}
+     * rows are pulled lazily keeping memory constant regardless of result
+     * size.
+     *
+     * @return this instance of AtSQLQuery
+     */
+    public AtSQLQuery withStreaming()
+    {
+        this.streaming = true;
+
+        return this;
+    }
+
+    /**
+     * Serves {@link #executeQuery()} from the query cache enabled by {@link
+     * AtSQLFactory#withQueryCache(long)}, keyed by this query's SQL and bound
+     * values.
+     * <p>
+     * On a miss the rows are materialized, cached for the given TTL and the
+     * connection is released before returning. The entry is invalidated
+     * early when an update touches one of the given tables. Ignored when the
+     * query cache is not enabled.
+     *
+     * @param ttl    how long the rows stay cached
+     * @param tables tables the query reads from, used as invalidation tags
+     * @return this instance of AtSQLQuery
+     */
+    public AtSQLQuery withCache(@Nonnull Duration ttl, String... tables)
+    {
+        Verify.notNull(ttl, "ttl cannot be null.");
+        Verify.isTrue(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive.");
+
+        this.cacheTtl    = ttl.toNanos();
+        this.cacheTables = tables;
+
+        return this;
+    }
+
+    /**
+     * Tags that {@link #executeUpdate()} invalidates in the query cache on
+     * top of the table recognized from a simple INSERT, UPDATE or DELETE.
+     *
+     * @param tables tables written to by this query
+     * @return this instance of AtSQLQuery
+     */
+    public AtSQLQuery invalidates(String... tables)
+    {
+        this.invalidates = tables;
+
+        return this;
+    }
+
     public Resulted<Integer> executeUpdate()
     {
         Verify.notTrue(closed, "SQLQuery cannot be called after closed");
@@ -76,13 +261,21 @@ public class AtSQLQuery
 
         LOG.debug(LogPattern.ENTER, "Database Execute Update");
 
-        try (AtSQLConnection atSQLConnection = atSQL.newConnection()) {
+        try (AtSQLConnection atSQLConnection = connect(false);
+             AtSQLStatement atSQLStatement = atSQLConnection.preparedStatement(query)) {
+
+            if (queryTimeout != 0)
+                atSQLStatement.setQueryTimeout(queryTimeout);
 
-            Integer updateCount = atSQLConnection
-                    .preparedStatement(query)
+            Integer updateCount = atSQLStatement
                     .setParams(atSQLParamList)
                     .executeUpdate();
 
+            if (atSQLTransaction != null)
+                atSQLTransaction.invalidateOnCommit(query, invalidates);
+            else
+                atSQL.invalidateWrite(query, invalidates);
+
             return Resulted.inValue(updateCount);
 
         } catch (SQLException e) {
@@ -100,25 +293,216 @@ public class AtSQLQuery
 
         LOG.debug(LogPattern.ENTER, "Database Execute Query");
 
+        AtSQLQueryCache queryCache = atSQL.queryCache();
+
+        if (cacheTtl != 0 && queryCache != null && atSQLTransaction == null)
+            return executeCachedQuery(queryCache);
+
+        return openResult();
+    }
+
+    private Resulted<AtSQLResult> executeCachedQuery(AtSQLQueryCache queryCache)
+    {
+        AtSQLQueryCache.Key key = AtSQLQueryCache.key(query, atSQLParamList);
+
+        try {
+            ResultSet cached = queryCache.get(key);
+
+            if (cached != null)
+                return Resulted.inValue(AtSQLResult.detached(cached));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Read Cached Database Query", e.getClass(), e.getMessage());
+
+        }
+
+        long[] generations = queryCache.generations(cacheTables);
+
+        try (Resulted<AtSQLResult> resulted = openResult()) {
+            if (resulted.notValid())
+                return Resulted.inResulted(resulted);
+
+            ResultSet rows = queryCache.put(key, resulted.value().getResultSet(), cacheTtl, cacheTables, generations);
+
+            return Resulted.inValue(AtSQLResult.detached(rows));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Cache Database Query", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    private Resulted<AtSQLResult> openResult()
+    {
         AtSQLConnection atSQLConnection = null;
+        AtSQLStatement  atSQLStatement  = null;
 
         try {
-            atSQLConnection = atSQL.newConnection();
+            atSQLConnection = connect(readQuery);
+
+            if (streaming) {
+                atSQLConnection.setAutoCommitOff();
+                atSQLStatement = atSQLConnection.forwardStatement(query);
+            } else {
+                atSQLStatement = atSQLConnection.preparedStatement(query);
+            }
+
+            if (fetchSize != 0)
+                atSQLStatement.setFetchSize(fetchSize);
 
-            ResultSet rs = atSQLConnection
-                    .preparedStatement(query)
+            if (queryTimeout != 0)
+                atSQLStatement.setQueryTimeout(queryTimeout);
+
+            ResultSet rs = atSQLStatement
                     .setParams(atSQLParamList)
                     .executeQuery();
 
-            return Resulted.inValue(AtSQLResult.newInstance(atSQLConnection, rs));
+            return Resulted.inValue(AtSQLResult.newInstance(atSQLConnection, atSQLStatement, rs));
 
         } catch (SQLException e) {
             LOG.error(LogPattern.EXIT_FAIL, "Prepare Database Query Execution", e.getClass(), e.getMessage());
 
+            Verify.closed(atSQLStatement);
             Verify.closed(atSQLConnection);
 
             return Resulted.inException(e);
 
         }
     }
+
+    private AtSQLConnection connect(boolean read)
+            throws SQLException
+    {
+        if (atSQLTransaction != null)
+            return atSQLTransaction.connection();
+
+        return read ? atSQL.newReadConnection() : atSQL.newConnection();
+    }
+
+    /**
+     * Executes the query and maps every row into a list, releasing the
+     * connection before returning.
+     *
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return the mapped rows in order
+     */
+    public <T> Resulted<List<T>> executeQuery(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        Verify.notNull(rowMapper, "rowMapper cannot be null.");
+
+        try (Resulted<AtSQLResult> resulted = executeQuery()) {
+            if (resulted.notValid())
+                return Resulted.inResulted(resulted);
+
+            ResultSet resultSet = resulted.value().getResultSet();
+            List<T>   rows      = new ArrayList<>();
+
+            while (resultSet.next())
+                rows.add(rowMapper.map(resultSet));
+
+            resulted.value().countRows(rows.size());
+
+            return Resulted.inValue(rows);
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Query Row Mapping", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    /**
+     * Executes the query and reads every row into an {@link AtSQLTable},
+     * releasing the connection before returning.
+     *
+     * @return the rows held column by column
+     */
+    public Resulted<AtSQLTable> executeQueryDetached()
+    {
+        try (Resulted<AtSQLResult> resulted = executeQuery()) {
+            if (resulted.notValid())
+                return Resulted.inResulted(resulted);
+
+            AtSQLTable atSQLTable = AtSQLTable.read(resulted.value().getResultSet());
+
+            resulted.value().countRows(atSQLTable.getRowCount());
+
+            return Resulted.inValue(atSQLTable);
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Query Detached Read", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    /**
+     * Executes the query and maps every row onto the given class, releasing
+     * the connection before returning.
+     *
+     * @param type class each row is mapped to
+     * @param <T>  type of the mapped row
+     * @return the mapped rows in order
+     * @see AtSQLResult#mapTo(Class)
+     */
+    public <T> Resulted<List<T>> executeQuery(@Nonnull Class<T> type)
+    {
+        Verify.notNull(type, "type cannot be null.");
+
+        try (Resulted<AtSQLResult> resulted = executeQuery()) {
+            if (resulted.notValid())
+                return Resulted.inResulted(resulted);
+
+            AtSQLRowMapper<T> rowMapper = resulted.value().mapTo(type);
+            ResultSet         resultSet = resulted.value().getResultSet();
+            List<T>           rows      = new ArrayList<>();
+
+            while (resultSet.next())
+                rows.add(rowMapper.map(resultSet));
+
+            resulted.value().countRows(rows.size());
+
+            return Resulted.inValue(rows);
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Query Row Mapping", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    /**
+     * Runs {@link #executeUpdate()} on the AtSQL async executor.
+     *
+     * @return a future completed with the update count
+     */
+    public CompletableFuture<Resulted<Integer>> executeUpdateAsync()
+    {
+        Verify.notTrue(closed, "SQLQuery cannot be called after closed");
+
+        return atSQL.supplyAsync(this::executeUpdate);
+    }
+
+    /**
+     * Runs {@link #executeQuery(AtSQLRowMapper)} on the AtSQL async executor.
+     * Rows are mapped on the executor thread so the connection never leaves
+     * it.
+     *
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return a future completed with the mapped rows in order
+     */
+    public <T> CompletableFuture<Resulted<List<T>>> executeQueryAsync(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        Verify.notTrue(closed, "SQLQuery cannot be called after closed");
+        Verify.notNull(rowMapper, "rowMapper cannot be null.");
+
+        return atSQL.supplyAsync(() -> executeQuery(rowMapper));
+    }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of materialized query results keyed by SQL text plus bound values.
+ * <p>
+ * Rows are held in a {@link CachedRowSet}, every hit receives a shared copy
+ * with its own cursor. Entries expire after their own TTL, are evicted by
+ * weight (rows times columns) once the maximum weight is reached and are
+ * invalidated by table tag when an update touches one of their tables.
+ * <p>
+ * Every invalidation bumps the generation of its tag. Callers take the
+ * generations before running the query and the rows are not cached when
+ * one has moved, as they may predate the invalidating update.
+ */
+class AtSQLQueryCache
+{
+    private static final Pattern WRITE_TARGET = Pattern.compile(
+            "^\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|MERGE\\s+INTO|UPDATE|DELETE\\s+FROM|TRUNCATE(?:\\s+TABLE)?)" +
+                    "\\s+([\\w.`\"\\[\\]]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final RowSetFactory                         rowSetFactory;
+    private final Cache<Key, Entry>                     cache;
+    private final ConcurrentHashMap<String, Set<Key>>   tableKeys;
+    private final ConcurrentHashMap<String, AtomicLong> generations;
+    private final AtomicLong                            epoch;
+    private final AtSQLCacheCounter                     counter;
+    private final long                                  maxTtlNanos;
+
+    /**
+     * @param maxWeight maximum number of cached cells (rows times columns)
+     * @param maxTtl    longest time in milliseconds an entry is kept, expired
+     *                  entries are reclaimed by the cache without being read
+     */
+    AtSQLQueryCache(long maxWeight, long maxTtl)
+            throws SQLException
+    {
+        this.rowSetFactory = RowSetProvider.newFactory();
+        this.tableKeys     = new ConcurrentHashMap<>();
+        this.generations   = new ConcurrentHashMap<>();
+        this.epoch         = new AtomicLong();
+        this.counter       = new AtSQLCacheCounter();
+        this.maxTtlNanos   = TimeUnit.MILLISECONDS.toNanos(maxTtl);
+        this.cache         = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, Entry entry) -> entry.weight)
+                .expireAfterWrite(maxTtl, TimeUnit.MILLISECONDS)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    static Key key(String query, AtSQLParamList atSQLParamList)
+    {
+        Object[] values = new Object[atSQLParamList.size()];
+
+        for (int i = 0; i < values.length; i++)
+            values[i] = atSQLParamList.getValue(i);
+
+        return new Key(query, values);
+    }
+
+    ResultSet get(Key key)
+            throws SQLException
+    {
+        Entry entry = cache.getIfPresent(key);
+
+        if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+            cache.invalidate(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            counter.miss();
+            return null;
+        }
+
+        counter.hit();
+
+        return entry.rows.createShared();
+    }
+
+    /**
+     * @return the invalidation generations of the tables, to be handed to
+     * {@link #put} once the query has run
+     */
+    long[] generations(String[] tables)
+    {
+        long[] stamp = new long[tables.length + 1];
+
+        for (int i = 0; i < tables.length; i++)
+            stamp[i] = generation(normalize(tables[i])).get();
+
+        stamp[tables.length] = epoch.get();
+
+        return stamp;
+    }
+
+    /**
+     * Caches the rows unless one of the tables was invalidated since the
+     * generations were taken, the rows are returned either way.
+     */
+    ResultSet put(Key key, ResultSet resultSet, long ttlNanos, String[] tables, long[] generations)
+            throws SQLException
+    {
+        CachedRowSet rows = rowSetFactory.createCachedRowSet();
+        rows.populate(resultSet);
+        rows.beforeFirst();
+
+        String[] tags = new String[tables.length];
+        for (int i = 0; i < tables.length; i++)
+            tags[i] = normalize(tables[i]);
+
+        long weight = (long) rows.size() * Math.max(rows.getMetaData().getColumnCount(), 1);
+
+        long  ttl   = Math.min(ttlNanos, maxTtlNanos);
+        Entry entry = new Entry(rows, System.nanoTime() + ttl, tags, (int) Math.min(weight, Integer.MAX_VALUE));
+
+        for (String tag : tags)
+            tableKeys.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key);
+
+        cache.put(key, entry);
+
+        // Checked once tagged, so an invalidation racing the put either sees the key or moves the generation
+        if (!Arrays.equals(generations, generations(tables)))
+            cache.invalidate(key);
+
+        return rows.createShared();
+    }
+
+    void invalidate(String table)
+    {
+        String tag = normalize(table);
+
+        generation(tag).incrementAndGet();
+
+        Set<Key> keys = tableKeys.remove(tag);
+
+        if (keys != null)
+            cache.invalidateAll(keys);
+    }
+
+    void invalidateWrite(String query, String[] tables)
+    {
+        for (String table : tables)
+            invalidate(table);
+
+        String target = writeTarget(query);
+
+        if (target != null)
+            invalidate(target);
+    }
+
+    void invalidateAll()
+    {
+        epoch.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private AtomicLong generation(String tag)
+    {
+        return generations.computeIfAbsent(tag, t -> new AtomicLong());
+    }
+
+    AtSQLCacheStats stats()
+    {
+        return counter.snapshot();
+    }
+
+    /**
+     * @return the table written to by a simple INSERT, REPLACE, MERGE,
+     * UPDATE, DELETE or TRUNCATE statement, or null when not recognized
+     */
+    static String writeTarget(String query)
+    {
+        Matcher matcher = WRITE_TARGET.matcher(query);
+
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    static String normalize(String table)
+    {
+        String name = table.replaceAll("[`\"\\[\\]]", "");
+        int    dot  = name.lastIndexOf('.');
+
+        return (dot == -1 ? name : name.substring(dot + 1)).toLowerCase(Locale.ROOT);
+    }
+
+    private void onRemoval(RemovalNotification<Key, Entry> notification)
+    {
+        if (notification.getCause() == RemovalCause.SIZE)
+            counter.eviction();
+
+        Entry entry = notification.getValue();
+
+        // The key now maps to the replacing entry, which must stay tagged
+        if (entry == null || notification.getCause() == RemovalCause.REPLACED)
+            return;
+
+        for (String tag : entry.tags) {
+            Set<Key> keys = tableKeys.get(tag);
+
+            if (keys != null)
+                keys.remove(notification.getKey());
+        }
+    }
+
+    static final class Key
+    {
+        private final String   query;
+        private final Object[] values;
+        private final int      hash;
+
+        private Key(String query, Object[] values)
+        {
+            this.query  = query;
+            this.values = values;
+            this.hash   = 31 * query.hashCode() + Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            Key that = (Key) o;
+
+            return hash == that.hash &&
+                    query.equals(that.query) &&
+                    Arrays.deepEquals(values, that.values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final CachedRowSet rows;
+        private final long         expiresAt;
+        private final String[]     tags;
+        private final int          weight;
+
+        private Entry(CachedRowSet rows, long expiresAt, String[] tags, int weight)
+        {
+            this.rows      = rows;
+            this.expiresAt = expiresAt;
+            this.tags      = tags;
+            this.weight    = weight;
+        }
+    }
+}
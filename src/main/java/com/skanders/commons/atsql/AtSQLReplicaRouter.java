@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Balances read connections across read-replica pools with a health-aware
+ * round robin.
+ * <p>
+ * A replica that fails to hand out a connection is skipped for a cool down
+ * period. When no replica is available {@link #getConnection()} returns null
+ * and the caller falls back to the primary.
+ */
+class AtSQLReplicaRouter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLReplicaRouter.class);
+
+    private final HikariDataSource[] replicas;
+    private final AtomicLongArray    unhealthyUntil;
+    private final AtomicInteger      next;
+    private final long               coolDownNanos;
+
+    AtSQLReplicaRouter(List<HikariConfig> replicaConfigs, long coolDownMillis)
+    {
+        this(newReplicas(replicaConfigs), coolDownMillis);
+    }
+
+    AtSQLReplicaRouter(HikariDataSource[] replicas, long coolDownMillis)
+    {
+        this.replicas       = replicas;
+        this.unhealthyUntil = new AtomicLongArray(replicas.length);
+        this.next           = new AtomicInteger();
+        this.coolDownNanos  = coolDownMillis * 1_000_000L;
+    }
+
+    private static HikariDataSource[] newReplicas(List<HikariConfig> replicaConfigs)
+    {
+        HikariDataSource[] replicas = new HikariDataSource[replicaConfigs.size()];
+
+        for (int i = 0; i < replicas.length; i++)
+            replicas[i] = new HikariDataSource(replicaConfigs.get(i));
+
+        return replicas;
+    }
+
+    boolean isEmpty()
+    {
+        return replicas.length == 0;
+    }
+
+    Connection getConnection()
+    {
+        int  start = Math.floorMod(next.getAndIncrement(), replicas.length);
+        long now   = System.nanoTime();
+
+        for (int i = 0; i < replicas.length; i++) {
+            int index = (start + i) % replicas.length;
+
+            long until = unhealthyUntil.get(index);
+            if (until != 0 && until - now > 0)
+                continue;
+
+            try {
+                Connection connection = replicas[index].getConnection();
+                unhealthyUntil.set(index, 0);
+
+                return connection;
+
+            } catch (SQLException e) {
+                LOG.error(LogPattern.EXIT_FAIL, "Request Replica Connection", e.getClass(), e.getMessage());
+
+                unhealthyUntil.set(index, System.nanoTime() + coolDownNanos);
+            }
+        }
+
+        LOG.warn("No healthy read replica available, falling back to primary");
+
+        return null;
+    }
+
+    void close()
+    {
+        for (HikariDataSource replica : replicas)
+            replica.close();
+    }
+}
@@ -17,28 +17,61 @@
 
 package com.skanders.commons.atsql;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.skanders.commons.convert.Mapper;
+import com.skanders.commons.def.LogPattern;
 import com.skanders.commons.def.Verify;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class AtSQLResult implements AutoCloseable
 {
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLResult.class);
+
     private AtSQLConnection atSQLConnection;
+    private AtSQLStatement  atSQLStatement;
     private ResultSet       resultSet;
 
-    private AtSQLResult(AtSQLConnection atSQLConnection, ResultSet resultSet)
+    private boolean closed;
+    private boolean counted;
+    private long    rowsRead;
+
+    private AtSQLResult(AtSQLConnection atSQLConnection, AtSQLStatement atSQLStatement, ResultSet resultSet)
     {
-        Verify.notNull(atSQLConnection, "query cannot be null.");
-        Verify.notNull(resultSet, "atSQL cannot be null.");
+        Verify.notNull(resultSet, "resultSet cannot be null.");
 
         this.atSQLConnection = atSQLConnection;
+        this.atSQLStatement  = atSQLStatement;
         this.resultSet       = resultSet;
+        this.closed          = false;
+        this.counted         = false;
+        this.rowsRead        = 0;
+    }
+
+    /**
+     * Creates a result over rows already materialized in memory, holding no
+     * connection. The result set is a shared copy and is left open on close.
+     */
+    static AtSQLResult detached(@Nonnull ResultSet resultSet)
+    {
+        return new AtSQLResult(null, null, resultSet);
     }
 
-    static AtSQLResult newInstance(@Nonnull AtSQLConnection atSQLConnection, @Nonnull ResultSet resultSet)
+    static AtSQLResult newInstance(
+            @Nonnull AtSQLConnection atSQLConnection, AtSQLStatement atSQLStatement, @Nonnull ResultSet resultSet)
     {
-        return new AtSQLResult(atSQLConnection, resultSet);
+        return new AtSQLResult(atSQLConnection, atSQLStatement, resultSet);
     }
 
     public ResultSet getResultSet()
@@ -46,9 +79,145 @@ public class AtSQLResult implements AutoCloseable
         return resultSet;
     }
 
+    /**
+     * Returns a mapper filling the given class from the columns of this
+     * result, for use with {@link #iterator(AtSQLRowMapper)} or {@link
+     * #stream(AtSQLRowMapper)}.
+     * <p>
+     * Columns are bound to constructor arguments, setters or fields once per
+     * class and column list, the plan is cached and shared across results.
+     * Records and {@link com.fasterxml.jackson.annotation.JsonCreator}
+     * constructors are supported, {@link
+     * com.fasterxml.jackson.annotation.JsonProperty} names take precedence
+     * over property names, which match columns ignoring case and underscores.
+     *
+     * @param type class each row is mapped to
+     * @param <T>  type of the mapped row
+     * @return a mapper bound to the columns of this result
+     * @throws SQLException if the class cannot be instantiated from the columns
+     */
+    public <T> AtSQLRowMapper<T> mapTo(@Nonnull Class<T> type)
+            throws SQLException
+    {
+        Verify.notNull(type, "type cannot be null.");
+
+        return AtSQLBeanMapper.forResultSet(resultSet, type);
+    }
+
+    /**
+     * Lazily iterates the rows of this result using the given mapper.
+     * <p>
+     * Only the current row is held in memory. This result is closed once the
+     * iterator is exhausted or closed.
+     *
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return an iterator over the mapped rows
+     */
+    public <T> AtSQLRowIterator<T> iterator(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        return new AtSQLRowIterator<>(this, rowMapper);
+    }
+
+    /**
+     * Lazily streams the rows of this result using the given mapper.
+     * <p>
+     * Only the current row is held in memory. This result is closed once the
+     * stream is exhausted or closed, callers that may stop early should use
+     * the stream in a try-with-resources block.
+     *
+     * @param rowMapper maps each row into a value
+     * @param <T>       type of the mapped row
+     * @return a sequential stream over the mapped rows
+     */
+    public <T> Stream<T> stream(@Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        AtSQLRowIterator<T> iterator = iterator(rowMapper);
+
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Writes every row of this result to the stream as a JSON array of
+     * objects keyed by column label, then closes this result.
+     * <p>
+     * Rows are written one at a time through a Jackson generator, combined
+     * with {@link AtSQLQuery#withStreaming()} and a fetch size memory stays
+     * flat and the first bytes are written before the last row is read. The
+     * stream itself is flushed but left open. A failure part way leaves the
+     * JSON unterminated, so a truncated result cannot pass for a complete
+     * one.
+     *
+     * @param outputStream stream the JSON is written to
+     * @throws IOException if the rows cannot be read or written
+     */
+    public void writeJson(@Nonnull OutputStream outputStream)
+            throws IOException
+    {
+        Verify.notNull(outputStream, "outputStream cannot be null.");
+
+        try (JsonGenerator generator = Mapper.forJson().getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+            countRows(AtSQLJsonWriter.forResultSet(resultSet).writeRows(resultSet, generator));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Result Json Write", e.getClass(), e.getMessage());
+
+            throw new IOException(e);
+
+        } finally {
+            close();
+
+        }
+    }
+
+    /**
+     * @return a JAX-RS entity writing this result as JSON when the response
+     * is sent, closing this result once written
+     * @see #writeJson(OutputStream)
+     */
+    public StreamingOutput toStreamingOutput()
+    {
+        return this::writeJson;
+    }
+
+    /**
+     * Counts rows read through AtSQL, recorded as rows fetched by the
+     * statement's metrics on close.
+     */
+    void countRows(long rows)
+    {
+        counted   = true;
+        rowsRead += rows;
+    }
+
     @Override
     public void close()
     {
+        if (closed)
+            return;
+
+        closed = true;
+
+        if (counted && atSQLStatement != null && atSQLStatement.metrics() != null)
+            atSQLStatement.metrics().recordRows(atSQLStatement.query(), rowsRead);
+
+        if (atSQLConnection == null)
+            return;
+
+        try {
+            resultSet.close();
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Could not close result set", e.getClass(), e.getMessage());
+
+        }
+
+        Verify.closed(atSQLStatement);
         atSQLConnection.close();
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.def.Verify;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward-only iterator over the rows of an {@link AtSQLResult}.
+ * <p>
+ * Rows are read from the {@link ResultSet} one at a time as they are
+ * requested, so only the current row is ever held in memory. The underlying
+ * {@link AtSQLResult} (and with it the pooled connection) is closed once the
+ * rows are exhausted, when a row fails to map or when {@link #close()} is
+ * called.
+ *
+ * @param <T> type of the mapped row
+ */
+public class AtSQLRowIterator<T> implements Iterator<T>, AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLRowIterator.class);
+
+    private final AtSQLResult       atSQLResult;
+    private final ResultSet         resultSet;
+    private final AtSQLRowMapper<T> rowMapper;
+
+    private boolean advanced;
+    private boolean hasRow;
+    private boolean closed;
+
+    AtSQLRowIterator(@Nonnull AtSQLResult atSQLResult, @Nonnull AtSQLRowMapper<T> rowMapper)
+    {
+        Verify.notNull(atSQLResult, "atSQLResult cannot be null.");
+        Verify.notNull(rowMapper, "rowMapper cannot be null.");
+
+        this.atSQLResult = atSQLResult;
+        this.resultSet   = atSQLResult.getResultSet();
+        this.rowMapper   = rowMapper;
+        this.advanced    = false;
+        this.hasRow      = false;
+        this.closed      = false;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (closed)
+            return false;
+
+        if (!advanced) {
+            try {
+                hasRow   = resultSet.next();
+                advanced = true;
+
+            } catch (SQLException e) {
+                LOG.error(LogPattern.EXIT_FAIL, "Advance Result Row", e.getClass(), e.getMessage());
+
+                close();
+                throw new SkandersException(e);
+            }
+
+            if (!hasRow)
+                close();
+        }
+
+        return hasRow;
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        advanced = false;
+        atSQLResult.countRows(1);
+
+        try {
+            return rowMapper.map(resultSet);
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Map Result Row", e.getClass(), e.getMessage());
+
+            close();
+            throw new SkandersException(e);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+
+        closed = true;
+        hasRow = false;
+
+        atSQLResult.close();
+    }
+}
@@ -17,30 +17,19 @@
 
 package com.skanders.commons.atsql;
 
-class AtSQLParam
-{
-    private Integer type;
-    private Object  value;
-
-    AtSQLParam(Integer type, Object value)
-    {
-        this.type  = type;
-        this.value = value;
-    }
-
-    AtSQLParam(Object value)
-    {
-        this.type  = null;
-        this.value = value;
-    }
-
-    Integer getType()
-    {
-        return type;
-    }
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
-    Object getValue()
-    {
-        return value;
-    }
+/**
+ * Maps the current row of a {@link ResultSet} into a value.
+ * <p>
+ * Implementations should only read the current row and must not move the
+ * cursor, AtSQL takes care of advancing it.
+ *
+ * @param <T> type of the mapped row
+ */
+@FunctionalInterface
+public interface AtSQLRowMapper<T>
+{
+    T map(ResultSet resultSet) throws SQLException;
 }
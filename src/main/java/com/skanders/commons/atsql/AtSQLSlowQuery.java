@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A statement execution that took longer than the threshold set by {@link
+ * AtSQLFactory#withSlowQueryLog(long)}.
+ */
+public class AtSQLSlowQuery
+{
+    private final String       fingerprint;
+    private final String       query;
+    private final String       operation;
+    private final long         elapsedNanos;
+    private final long         timestamp;
+    private final String       threadName;
+    private final int          batchRows;
+    private final List<Object> params;
+
+    AtSQLSlowQuery(String fingerprint, String query, String operation, long elapsedNanos, long timestamp,
+                   String threadName, int batchRows, List<Object> params)
+    {
+        this.fingerprint  = fingerprint;
+        this.query        = query;
+        this.operation    = operation;
+        this.elapsedNanos = elapsedNanos;
+        this.timestamp    = timestamp;
+        this.threadName   = threadName;
+        this.batchRows    = batchRows;
+        this.params       = params == null ? null : Collections.unmodifiableList(params);
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return one of {@code query}, {@code update} or {@code batch}
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return when the execution finished, in epoch milliseconds
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public String getThreadName()
+    {
+        return threadName;
+    }
+
+    /**
+     * @return number of rows sent by a batch execution, 1 otherwise
+     */
+    public int getBatchRows()
+    {
+        return batchRows;
+    }
+
+    /**
+     * @return the bound params (of the first row for a batch), or null when
+     * not captured for this execution
+     */
+    public List<Object> getParams()
+    {
+        return params;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AtSQLSlowQuery{" +
+                "fingerprint='" + fingerprint + '\'' +
+                ", operation='" + operation + '\'' +
+                ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                ", batchRows=" + batchRows +
+                ", params=" + params +
+                '}';
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the last slow executions.
+ * <p>
+ * Executions under the threshold cost a single comparison. Slow ones are
+ * logged and stored, overwriting the oldest entry once full; bound params
+ * are only copied for the sampled share of them and can be redacted down
+ * to their type.
+ */
+class AtSQLSlowQueryLog
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLSlowQueryLog.class);
+
+    private final long                                 thresholdNanos;
+    private final double                               sampleRate;
+    private final boolean                              redact;
+    private final AtomicReferenceArray<AtSQLSlowQuery> entries;
+    private final AtomicLong                           next;
+
+    AtSQLSlowQueryLog(long thresholdMillis, int capacity, double sampleRate, boolean redact)
+    {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleRate     = sampleRate;
+        this.redact         = redact;
+        this.entries        = new AtomicReferenceArray<>(capacity);
+        this.next           = new AtomicLong();
+    }
+
+    boolean isSlow(long elapsedNanos)
+    {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    void record(String query, String operation, long elapsedNanos, int batchRows,
+                AtSQLParamList atSQLParamList, int from, int to)
+    {
+        String       fingerprint = AtSQLFingerprint.of(query);
+        List<Object> params      = null;
+
+        if (atSQLParamList != null && sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)
+            params = copyParams(atSQLParamList, from, to);
+
+        AtSQLSlowQuery slowQuery = new AtSQLSlowQuery(fingerprint, query, operation, elapsedNanos,
+                System.currentTimeMillis(), Thread.currentThread().getName(), batchRows, params);
+
+        entries.set((int) (next.getAndIncrement() % entries.length()), slowQuery);
+
+        LOG.warn("Slow {} took {}ms: {}", operation, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), fingerprint);
+    }
+
+    /**
+     * @return the stored slow executions, most recent first
+     */
+    List<AtSQLSlowQuery> recent()
+    {
+        long                 last      = next.get();
+        int                  capacity  = entries.length();
+        List<AtSQLSlowQuery> slowQuery = new ArrayList<>();
+
+        for (long i = last - 1; i >= 0 && i >= last - capacity; i--) {
+            AtSQLSlowQuery entry = entries.get((int) (i % capacity));
+
+            if (entry != null)
+                slowQuery.add(entry);
+        }
+
+        return slowQuery;
+    }
+
+    void clear()
+    {
+        for (int i = 0; i < entries.length(); i++)
+            entries.set(i, null);
+    }
+
+    private List<Object> copyParams(AtSQLParamList atSQLParamList, int from, int to)
+    {
+        List<Object> params = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++) {
+            Object value = atSQLParamList.getValue(i);
+
+            params.add(redact ? redacted(value) : value);
+        }
+
+        return params;
+    }
+
+    static String redacted(Object value)
+    {
+        if (value == null)
+            return "<null>";
+        else if (value instanceof CharSequence)
+            return "<" + value.getClass().getSimpleName() + ":" + ((CharSequence) value).length() + ">";
+        else if (value instanceof byte[])
+            return "<byte[]:" + ((byte[]) value).length + ">";
+        else
+            return "<" + value.getClass().getSimpleName() + ">";
+    }
+}
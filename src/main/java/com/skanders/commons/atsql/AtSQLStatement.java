@@ -18,68 +18,314 @@
 package com.skanders.commons.atsql;
 
 
+import com.skanders.commons.def.LogPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
-class AtSQLStatement
+class AtSQLStatement implements AutoCloseable
 {
     private static final Logger LOG = LoggerFactory.getLogger(AtSQLStatement.class);
 
-    private PreparedStatement preparedStatement;
+    private final PreparedStatement   preparedStatement;
+    private final AtSQLStatementCache statementCache;
+    private final String              cacheKey;
 
     private boolean closed;
-    private boolean toggledCommit;
+    private boolean failed;
+    private boolean batched;
+    private boolean fetchSizeSet;
+    private boolean queryTimeoutSet;
+
+    private AtSQLMetrics      metrics;
+    private AtSQLSlowQueryLog slowQueryLog;
+    private String            query;
+
+    private AtSQLParamList boundList;
+    private int            boundFrom;
+    private int            boundTo;
+    private int            batchRows;
 
     AtSQLStatement(PreparedStatement preparedStatement)
+    {
+        this(preparedStatement, null, null);
+    }
+
+    AtSQLStatement(PreparedStatement preparedStatement, AtSQLStatementCache statementCache, String cacheKey)
     {
         this.preparedStatement = preparedStatement;
+        this.statementCache    = statementCache;
+        this.cacheKey          = cacheKey;
+        this.closed            = false;
+        this.failed            = false;
+        this.batched           = false;
+        this.fetchSizeSet      = false;
+        this.queryTimeoutSet   = false;
+    }
+
+    AtSQLStatement instrument(AtSQLMetrics metrics, AtSQLSlowQueryLog slowQueryLog, String query)
+    {
+        this.metrics      = metrics;
+        this.slowQueryLog = slowQueryLog;
+        this.query        = query;
+
+        return this;
+    }
+
+    AtSQLMetrics metrics()
+    {
+        return metrics;
+    }
+
+    String query()
+    {
+        return query;
     }
 
     AtSQLStatement setParams(AtSQLParamList atSQLParamList)
             throws SQLException
     {
-        int count = 1;
+        return setParams(atSQLParamList, 0, atSQLParamList.size());
+    }
+
+    AtSQLStatement setParams(AtSQLParamList atSQLParamList, int from, int to)
+            throws SQLException
+    {
+        try {
+            bindParams(atSQLParamList, from, to);
+
+        } catch (SQLException e) {
+            failed = true;
+            throw e;
+        }
 
-        for (AtSQLParam atSQLParam : atSQLParamList.getList())
-            if (atSQLParam.getType() == null)
-                preparedStatement.setObject(count++, atSQLParam.getValue());
-            else
-                preparedStatement.setObject(count++, atSQLParam.getValue(), atSQLParam.getType());
+        if (slowQueryLog != null && !batched) {
+            boundList = atSQLParamList;
+            boundFrom = from;
+            boundTo   = to;
+        }
 
         return this;
     }
 
+    private void bindParams(AtSQLParamList atSQLParamList, int from, int to)
+            throws SQLException
+    {
+        int count = 1;
+
+        for (int i = from; i < to; i++, count++) {
+            switch (atSQLParamList.kind(i)) {
+                case AtSQLParamList.INT:
+                    preparedStatement.setInt(count, atSQLParamList.getInt(i));
+                    break;
+                case AtSQLParamList.LONG:
+                    preparedStatement.setLong(count, atSQLParamList.getLong(i));
+                    break;
+                case AtSQLParamList.DOUBLE:
+                    preparedStatement.setDouble(count, atSQLParamList.getDouble(i));
+                    break;
+                case AtSQLParamList.STRING:
+                    preparedStatement.setString(count, (String) atSQLParamList.getObject(i));
+                    break;
+                case AtSQLParamList.BYTES:
+                    preparedStatement.setBytes(count, (byte[]) atSQLParamList.getObject(i));
+                    break;
+                case AtSQLParamList.NULL:
+                    preparedStatement.setNull(count, atSQLParamList.getType(i));
+                    break;
+                case AtSQLParamList.TYPED:
+                    preparedStatement.setObject(count, atSQLParamList.getObject(i), atSQLParamList.getType(i));
+                    break;
+                default:
+                    preparedStatement.setObject(count, atSQLParamList.getObject(i));
+            }
+        }
+    }
+
     AtSQLStatement setBatch(AtSQLParamList atSQLParamList)
             throws SQLException
     {
-        setParams(atSQLParamList);
+        return setBatch(atSQLParamList, 0, atSQLParamList.size());
+    }
+
+    AtSQLStatement setBatch(AtSQLParamList atSQLParamList, int from, int to)
+            throws SQLException
+    {
+        setParams(atSQLParamList, from, to);
+
+        try {
+            preparedStatement.addBatch();
+            batched = true;
+            batchRows++;
 
-        preparedStatement.addBatch();
+        } catch (SQLException e) {
+            failed = true;
+            throw e;
+        }
 
         return this;
     }
 
+    AtSQLStatement setFetchSize(int fetchSize)
+            throws SQLException
+    {
+        preparedStatement.setFetchSize(fetchSize);
+        preparedStatement.setFetchDirection(ResultSet.FETCH_FORWARD);
+        fetchSizeSet = true;
+
+        return this;
+    }
+
+    AtSQLStatement setQueryTimeout(int seconds)
+            throws SQLException
+    {
+        preparedStatement.setQueryTimeout(seconds);
+        queryTimeoutSet = true;
+
+        return this;
+    }
 
     int[] executeBatch()
             throws SQLException
     {
-        return preparedStatement.executeBatch();
+        long start = isTimed() ? System.nanoTime() : 0L;
+
+        try {
+            int[] rowUpdates = preparedStatement.executeBatch();
+            batched = false;
+
+            return rowUpdates;
+
+        } catch (SQLException e) {
+            failed = true;
+            throw e;
+
+        } finally {
+            recordExecute("batch", start);
+
+        }
     }
 
     int executeUpdate()
             throws SQLException
     {
-        return preparedStatement.executeUpdate();
+        long start = isTimed() ? System.nanoTime() : 0L;
+
+        try {
+            return preparedStatement.executeUpdate();
+
+        } catch (SQLException e) {
+            failed = true;
+            throw e;
+
+        } finally {
+            recordExecute("update", start);
+
+        }
     }
 
     ResultSet executeQuery()
             throws SQLException
     {
-        return preparedStatement.executeQuery();
+        long start = isTimed() ? System.nanoTime() : 0L;
+
+        try {
+            return preparedStatement.executeQuery();
+
+        } catch (SQLException e) {
+            failed = true;
+            throw e;
+
+        } finally {
+            recordExecute("query", start);
+
+        }
+    }
+
+    /**
+     * @return the keys generated by the last execution, in the order the
+     * driver returned them
+     */
+    long[] getGeneratedKeys()
+            throws SQLException
+    {
+        try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+            long[] keys  = new long[16];
+            int    count = 0;
+
+            while (resultSet.next()) {
+                if (count == keys.length)
+                    keys = Arrays.copyOf(keys, count * 2);
+
+                keys[count++] = resultSet.getLong(1);
+            }
+
+            return Arrays.copyOf(keys, count);
+        }
     }
-}
 
+    private boolean isTimed()
+    {
+        return metrics != null || slowQueryLog != null;
+    }
+
+    private void recordExecute(String operation, long start)
+    {
+        if (!isTimed())
+            return;
+
+        long elapsed = System.nanoTime() - start;
+
+        if (metrics != null)
+            metrics.recordExecute(query, elapsed);
+
+        if (slowQueryLog != null && slowQueryLog.isSlow(elapsed))
+            slowQueryLog.record(query, operation, elapsed, Math.max(batchRows, 1), boundList, boundFrom, boundTo);
+
+        boundList = null;
+        batchRows = 0;
+    }
+
+    /**
+     * Hands a cached statement back to its {@link AtSQLStatementCache} or
+     * closes it. Statements that failed are never handed back as their
+     * connection may be broken.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+
+        closed = true;
+
+        if (statementCache == null || failed) {
+            AtSQLStatementCache.close(preparedStatement);
+            return;
+        }
+
+        try {
+            preparedStatement.clearParameters();
+
+            if (batched)
+                preparedStatement.clearBatch();
+
+            if (fetchSizeSet)
+                preparedStatement.setFetchSize(0);
+
+            if (queryTimeoutSet)
+                preparedStatement.setQueryTimeout(0);
+
+            statementCache.release(cacheKey, preparedStatement);
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Could not reset cached statement", e.getClass(), e.getMessage());
+
+            AtSQLStatementCache.close(preparedStatement);
+        }
+    }
+}
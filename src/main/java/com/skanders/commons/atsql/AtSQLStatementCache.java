@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link PreparedStatement}s belonging to a single physical
+ * connection, keyed by SQL text.
+ * <p>
+ * Statements are prepared on the physical connection rather than the pool
+ * proxy so they outlive a single checkout. A statement is removed from the
+ * cache while it is in use and handed back once its {@link AtSQLStatement}
+ * is closed, so the same SQL can be open twice on one connection without
+ * sharing a statement. The statements reference their connection, so
+ * AtSQL drops and closes the cache once the pool closes the connection.
+ */
+class AtSQLStatementCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLStatementCache.class);
+
+    private static final String KEYED_PREFIX = "/* keys */ ";
+
+    private final Connection                               connection;
+    private final int                                      maxSize;
+    private final AtSQLCacheCounter                        counter;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    AtSQLStatementCache(Connection connection, int maxSize, AtSQLCacheCounter counter)
+    {
+        this.connection = connection;
+        this.maxSize    = maxSize;
+        this.counter    = counter;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    AtSQLStatement prepare(String query)
+            throws SQLException
+    {
+        PreparedStatement preparedStatement = take(query);
+
+        if (preparedStatement == null)
+            preparedStatement = connection.prepareStatement(query);
+
+        return new AtSQLStatement(preparedStatement, this, query);
+    }
+
+    /**
+     * Prepares the query returning generated keys, cached apart from the
+     * same SQL prepared without them.
+     */
+    AtSQLStatement prepareKeyed(String query)
+            throws SQLException
+    {
+        String            key               = KEYED_PREFIX + query;
+        PreparedStatement preparedStatement = take(key);
+
+        if (preparedStatement == null)
+            preparedStatement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+
+        return new AtSQLStatement(preparedStatement, this, key);
+    }
+
+    synchronized void release(String key, PreparedStatement preparedStatement)
+    {
+        if (statements.containsKey(key)) {
+            close(preparedStatement);
+            return;
+        }
+
+        statements.put(key, preparedStatement);
+
+        if (statements.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+
+            close(eldest.next().getValue());
+            eldest.remove();
+
+            counter.eviction();
+        }
+    }
+
+    /**
+     * Drops the caches of physical connections the pool has closed, closing
+     * their statements, as the cached statements keep a reference to their
+     * connection.
+     */
+    static void retire(Map<Connection, AtSQLStatementCache> statementCaches)
+    {
+        statementCaches.entrySet().removeIf(entry -> {
+            if (!isClosed(entry.getKey()))
+                return false;
+
+            entry.getValue().closeAll();
+
+            return true;
+        });
+    }
+
+    private static boolean isClosed(Connection connection)
+    {
+        try {
+            return connection.isClosed();
+
+        } catch (SQLException e) {
+            return true;
+
+        }
+    }
+
+    /**
+     * Closes every cached statement, once the connection is retired.
+     */
+    synchronized void closeAll()
+    {
+        for (PreparedStatement preparedStatement : statements.values())
+            close(preparedStatement);
+
+        statements.clear();
+    }
+
+    private synchronized PreparedStatement take(String key)
+    {
+        PreparedStatement preparedStatement = statements.remove(key);
+
+        if (preparedStatement == null) {
+            counter.miss();
+        } else {
+            counter.hit();
+        }
+
+        return preparedStatement;
+    }
+
+    static void close(PreparedStatement preparedStatement)
+    {
+        try {
+            preparedStatement.close();
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Could not close statement", e.getClass(), e.getMessage());
+
+        }
+    }
+}
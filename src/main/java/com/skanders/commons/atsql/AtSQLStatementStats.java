@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+/**
+ * Point in time statistics of every execution sharing a statement
+ * fingerprint.
+ */
+public class AtSQLStatementStats
+{
+    private final String              fingerprint;
+    private final AtSQLHistogramStats acquire;
+    private final AtSQLHistogramStats execute;
+    private final AtSQLHistogramStats rows;
+
+    AtSQLStatementStats(String fingerprint, AtSQLHistogramStats acquire, AtSQLHistogramStats execute,
+                        AtSQLHistogramStats rows)
+    {
+        this.fingerprint = fingerprint;
+        this.acquire     = acquire;
+        this.execute     = execute;
+        this.rows        = rows;
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * @return nanoseconds spent waiting on the pool for the connection the
+     * statement ran on
+     */
+    public AtSQLHistogramStats getAcquireNanos()
+    {
+        return acquire;
+    }
+
+    /**
+     * @return nanoseconds spent executing the statement, excluding fetching
+     * rows past the first round trip
+     */
+    public AtSQLHistogramStats getExecuteNanos()
+    {
+        return execute;
+    }
+
+    /**
+     * @return rows read per result, only counted when read through AtSQL
+     * (iterators, streams, mappers and JSON)
+     */
+    public AtSQLHistogramStats getRowsFetched()
+    {
+        return rows;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AtSQLStatementStats{" +
+                "fingerprint='" + fingerprint + '\'' +
+                ", acquire=" + acquire +
+                ", execute=" + execute +
+                ", rows=" + rows +
+                '}';
+    }
+}
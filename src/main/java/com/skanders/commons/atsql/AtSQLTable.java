@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.def.Verify;
+
+import javax.annotation.Nonnull;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rows of a query held in memory column by column, returned by {@link
+ * AtSQLQuery#executeQueryDetached()} once the connection is back in the
+ * pool.
+ * <p>
+ * Integer, long, floating point and boolean columns are held in primitive
+ * arrays and character columns as codes into a string dictionary shared by
+ * every column of the table, so repeated values are stored once. Other
+ * types are held as the objects returned by the driver. Rows and columns
+ * are indexed from 0, numeric getters return 0 for null values.
+ */
+public class AtSQLTable
+{
+    private final String[]             labels;
+    private final int[]                types;
+    private final Map<String, Integer> indexes;
+    private final Column[]             columns;
+    private final String[]             dictionary;
+    private final int                  rowCount;
+
+    private AtSQLTable(String[] labels, int[] types, Column[] columns, String[] dictionary, int rowCount)
+    {
+        this.labels     = labels;
+        this.types      = types;
+        this.indexes    = new HashMap<>();
+        this.columns    = columns;
+        this.dictionary = dictionary;
+        this.rowCount   = rowCount;
+
+        for (int i = labels.length - 1; i >= 0; i--)
+            indexes.put(labels[i].toLowerCase(Locale.ROOT), i);
+    }
+
+    static AtSQLTable read(@Nonnull ResultSet resultSet)
+            throws SQLException
+    {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int               count    = metaData.getColumnCount();
+        String[]          labels   = new String[count];
+        int[]             types    = new int[count];
+        Column[]          columns  = new Column[count];
+
+        Map<String, Integer> codes      = new HashMap<>();
+        List<String>         dictionary = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            labels[i]  = metaData.getColumnLabel(i + 1);
+            types[i]   = metaData.getColumnType(i + 1);
+            columns[i] = Column.forType(types[i], metaData.isSigned(i + 1), codes, dictionary);
+        }
+
+        int rows = 0;
+
+        while (resultSet.next()) {
+            for (int i = 0; i < count; i++)
+                columns[i].read(resultSet, i + 1, rows);
+
+            rows++;
+        }
+
+        for (Column column : columns)
+            column.trim(rows);
+
+        return new AtSQLTable(labels, types, columns, dictionary.toArray(new String[0]), rows);
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    public String getColumnLabel(int column)
+    {
+        return labels[column];
+    }
+
+    /**
+     * @return the {@link Types} of the column as reported by the driver
+     */
+    public int getColumnType(int column)
+    {
+        return types[column];
+    }
+
+    /**
+     * @param label column label, ignoring case
+     * @return index of the first column with the label
+     */
+    public int findColumn(@Nonnull String label)
+    {
+        Integer index = indexes.get(label.toLowerCase(Locale.ROOT));
+
+        if (index == null)
+            throw new SkandersException("No column labeled " + label);
+
+        return index;
+    }
+
+    public boolean isNull(int row, int column)
+    {
+        return column(row, column).isNull(row);
+    }
+
+    public int getInt(int row, int column)
+    {
+        return (int) getLong(row, column);
+    }
+
+    public long getLong(int row, int column)
+    {
+        return column(row, column).getLong(row);
+    }
+
+    public double getDouble(int row, int column)
+    {
+        return column(row, column).getDouble(row);
+    }
+
+    public boolean getBoolean(int row, int column)
+    {
+        return column(row, column).getLong(row) != 0;
+    }
+
+    public String getString(int row, int column)
+    {
+        Object value = getObject(row, column);
+
+        return value == null ? null : value.toString();
+    }
+
+    public Object getObject(int row, int column)
+    {
+        Column values = column(row, column);
+
+        return values.isNull(row) ? null : values.getObject(row, dictionary);
+    }
+
+    public boolean isNull(int row, @Nonnull String label)
+    {
+        return isNull(row, findColumn(label));
+    }
+
+    public int getInt(int row, @Nonnull String label)
+    {
+        return getInt(row, findColumn(label));
+    }
+
+    public long getLong(int row, @Nonnull String label)
+    {
+        return getLong(row, findColumn(label));
+    }
+
+    public double getDouble(int row, @Nonnull String label)
+    {
+        return getDouble(row, findColumn(label));
+    }
+
+    public boolean getBoolean(int row, @Nonnull String label)
+    {
+        return getBoolean(row, findColumn(label));
+    }
+
+    public String getString(int row, @Nonnull String label)
+    {
+        return getString(row, findColumn(label));
+    }
+
+    public Object getObject(int row, @Nonnull String label)
+    {
+        return getObject(row, findColumn(label));
+    }
+
+    /**
+     * @return number of distinct strings held by the dictionary
+     */
+    public int getDictionarySize()
+    {
+        return dictionary.length;
+    }
+
+    private Column column(int row, int column)
+    {
+        Verify.isTrue(row >= 0 && row < rowCount, "row out of range.");
+
+        return columns[column];
+    }
+
+    private static abstract class Column
+    {
+        BitSet nulls = new BitSet();
+
+        static Column forType(int type, boolean signed, Map<String, Integer> codes, List<String> dictionary)
+        {
+            switch (type) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                    return new IntColumn();
+
+                case Types.INTEGER:
+                    // INT UNSIGNED overflows an int
+                    return signed ? new IntColumn() : new LongColumn();
+
+                case Types.BIGINT:
+                    return new LongColumn();
+
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return new DoubleColumn();
+
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return new BooleanColumn();
+
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                    return new StringColumn(codes, dictionary);
+
+                default:
+                    return new ObjectColumn();
+            }
+        }
+
+        boolean isNull(int row)
+        {
+            return nulls.get(row);
+        }
+
+        abstract void read(ResultSet resultSet, int column, int row) throws SQLException;
+
+        abstract void trim(int rows);
+
+        abstract Object getObject(int row, String[] dictionary);
+
+        long getLong(int row)
+        {
+            throw new SkandersException("Column is not numeric");
+        }
+
+        double getDouble(int row)
+        {
+            return getLong(row);
+        }
+    }
+
+    private static class IntColumn extends Column
+    {
+        private int[] values = new int[16];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            if (row == values.length)
+                values = Arrays.copyOf(values, row * 2);
+
+            values[row] = resultSet.getInt(column);
+
+            if (resultSet.wasNull())
+                nulls.set(row);
+        }
+
+        @Override
+        void trim(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row)
+        {
+            return values[row];
+        }
+    }
+
+    private static class LongColumn extends Column
+    {
+        private long[] values = new long[16];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            if (row == values.length)
+                values = Arrays.copyOf(values, row * 2);
+
+            values[row] = resultSet.getLong(column);
+
+            if (resultSet.wasNull())
+                nulls.set(row);
+        }
+
+        @Override
+        void trim(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row)
+        {
+            return values[row];
+        }
+    }
+
+    private static class DoubleColumn extends Column
+    {
+        private double[] values = new double[16];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            if (row == values.length)
+                values = Arrays.copyOf(values, row * 2);
+
+            values[row] = resultSet.getDouble(column);
+
+            if (resultSet.wasNull())
+                nulls.set(row);
+        }
+
+        @Override
+        void trim(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row)
+        {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row)
+        {
+            return values[row];
+        }
+    }
+
+    private static class BooleanColumn extends Column
+    {
+        private BitSet values = new BitSet();
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            values.set(row, resultSet.getBoolean(column));
+
+            if (resultSet.wasNull())
+                nulls.set(row);
+        }
+
+        @Override
+        void trim(int rows)
+        {
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return values.get(row);
+        }
+
+        @Override
+        long getLong(int row)
+        {
+            return values.get(row) ? 1 : 0;
+        }
+    }
+
+    private static class StringColumn extends Column
+    {
+        private final Map<String, Integer> codes;
+        private final List<String>         dictionary;
+
+        private int[] values = new int[16];
+
+        private StringColumn(Map<String, Integer> codes, List<String> dictionary)
+        {
+            this.codes      = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            String value = resultSet.getString(column);
+
+            if (row == values.length)
+                values = Arrays.copyOf(values, row * 2);
+
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+
+            Integer code = codes.get(value);
+
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+
+            values[row] = code;
+        }
+
+        @Override
+        void trim(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return dictionary[values[row]];
+        }
+    }
+
+    private static class ObjectColumn extends Column
+    {
+        private Object[] values = new Object[16];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row)
+                throws SQLException
+        {
+            if (row == values.length)
+                values = Arrays.copyOf(values, row * 2);
+
+            values[row] = resultSet.getObject(column);
+
+            if (values[row] == null)
+                nulls.set(row);
+        }
+
+        @Override
+        void trim(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        Object getObject(int row, String[] dictionary)
+        {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row)
+        {
+            if (values[row] == null)
+                return 0;
+
+            if (values[row] instanceof Number)
+                return ((Number) values[row]).longValue();
+
+            return super.getLong(row);
+        }
+
+        @Override
+        double getDouble(int row)
+        {
+            if (values[row] == null)
+                return 0;
+
+            if (values[row] instanceof Number)
+                return ((Number) values[row]).doubleValue();
+
+            return super.getDouble(row);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.Verify;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL with {@code :name} parameters parsed once, created by {@link
+ * AtSQL#compile(String)}.
+ * <p>
+ * The parameters are replaced with {@code ?} placeholders and every
+ * placeholder is mapped to the index of its name up front, so a name may be
+ * used several times and executing only binds values through {@link
+ * #bind()}. Names inside quotes, quoted identifiers and comments are left
+ * alone, as are {@code ::} casts and {@code :=} assignments. A template is
+ * immutable and can be shared across threads.
+ */
+public class AtSQLTemplate
+{
+    private final AtSQL                atSQL;
+    private final String               source;
+    private final String               query;
+    private final String[]             segments;
+    private final String[]             names;
+    private final int[]                slots;
+    private final Map<String, Integer> indexes;
+
+    private AtSQLTemplate(AtSQL atSQL, String source, List<String> segments, List<String> names, int[] slots,
+                          Map<String, Integer> indexes)
+    {
+        this.atSQL    = atSQL;
+        this.source   = source;
+        this.segments = segments.toArray(new String[0]);
+        this.names    = names.toArray(new String[0]);
+        this.slots    = slots;
+        this.indexes  = Collections.unmodifiableMap(indexes);
+        this.query    = String.join("?", this.segments);
+    }
+
+    static AtSQLTemplate compile(AtSQL atSQL, @Nonnull String sql)
+    {
+        Verify.notNull(sql, "sql cannot be null.");
+
+        List<String>         segments = new ArrayList<>();
+        List<String>         names    = new ArrayList<>();
+        List<Integer>        slots    = new ArrayList<>();
+        Map<String, Integer> indexes  = new LinkedHashMap<>();
+
+        StringBuilder segment = new StringBuilder();
+        int           length  = sql.length();
+        int           i       = 0;
+
+        while (i < length) {
+            char c = sql.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                segment.append(sql, i, end);
+                i = end;
+
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                end = end == -1 ? length : end;
+                segment.append(sql, i, end);
+                i = end;
+
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end == -1 ? length : end + 2;
+                segment.append(sql, i, end);
+                i = end;
+
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                segment.append("::");
+                i += 2;
+
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 2;
+
+                while (end < length && Character.isJavaIdentifierPart(sql.charAt(end)))
+                    end++;
+
+                String name = sql.substring(i + 1, end);
+
+                if (!indexes.containsKey(name)) {
+                    indexes.put(name, names.size());
+                    names.add(name);
+                }
+
+                segments.add(segment.toString());
+                slots.add(indexes.get(name));
+                segment.setLength(0);
+                i = end;
+
+            } else {
+                Verify.notTrue(c == '?', "positional ? params cannot be mixed with :name params.");
+
+                segment.append(c);
+                i++;
+
+            }
+        }
+
+        segments.add(segment.toString());
+
+        int[] slotArray = new int[slots.size()];
+
+        for (int s = 0; s < slotArray.length; s++)
+            slotArray[s] = slots.get(s);
+
+        return new AtSQLTemplate(atSQL, sql, segments, names, slotArray, indexes);
+    }
+
+    private static int skipQuoted(String sql, int start, char quote)
+    {
+        int i = start + 1;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (c == '\\' && quote == '\'') {
+                i += 2;
+            } else if (c == quote && i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+
+        return sql.length();
+    }
+
+    /**
+     * @return a binder to set the params of one execution
+     */
+    public AtSQLBinder bind()
+    {
+        return new AtSQLBinder(this);
+    }
+
+    /**
+     * @return the SQL the template was compiled from
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+    /**
+     * @return the SQL with every parameter replaced by a {@code ?} placeholder
+     */
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return the distinct parameter names in order of first use
+     */
+    public List<String> getNames()
+    {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    AtSQL atSQL()
+    {
+        return atSQL;
+    }
+
+    String[] segments()
+    {
+        return segments;
+    }
+
+    int[] slots()
+    {
+        return slots;
+    }
+
+    int nameCount()
+    {
+        return names.length;
+    }
+
+    String name(int index)
+    {
+        return names[index];
+    }
+
+    int index(@Nonnull String name)
+    {
+        Integer index = indexes.get(name);
+
+        Verify.notNull(index, "no param named :" + name);
+
+        return index;
+    }
+}
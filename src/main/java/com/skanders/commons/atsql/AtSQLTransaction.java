@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Result;
+import com.skanders.commons.result.Resulted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transaction spanning several queries and batches on a single pooled
+ * connection.
+ * <p>
+ * Every query, batch and multi batch created from the transaction runs on
+ * its connection without committing, the work is only made durable by
+ * {@link #commit()}. Query cache invalidations are deferred until commit and
+ * the query cache is bypassed for reads inside the transaction. Closing a
+ * transaction that was neither committed nor rolled back rolls it back.
+ */
+public class AtSQLTransaction implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLTransaction.class);
+
+    private final AtSQL           atSQL;
+    private final AtSQLConnection atSQLConnection;
+    private final List<String>    writeQueries;
+    private final List<String[]>  writeTables;
+
+    private boolean finished;
+
+    AtSQLTransaction(@Nonnull AtSQL atSQL, @Nonnull AtSQLConnection atSQLConnection)
+    {
+        Verify.notNull(atSQL, "atSQL cannot be null.");
+        Verify.notNull(atSQLConnection, "atSQLConnection cannot be null.");
+
+        this.atSQL           = atSQL;
+        this.atSQLConnection = atSQLConnection;
+        this.writeQueries    = new ArrayList<>();
+        this.writeTables     = new ArrayList<>();
+        this.finished        = false;
+    }
+
+    public AtSQLQuery createQuery(@Nonnull String query)
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        return new AtSQLQuery(query, atSQL, this);
+    }
+
+    public AtSQLBatch createBatch(@Nonnull String query)
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        return new AtSQLBatch(query, atSQL, this);
+    }
+
+    public AtSQLMultiBatch createMultiBatch()
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        return new AtSQLMultiBatch(atSQL, this);
+    }
+
+    public Resulted<Savepoint> savepoint()
+    {
+        return savepoint(null);
+    }
+
+    public Resulted<Savepoint> savepoint(String name)
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        try {
+            return Resulted.inValue(atSQLConnection.setSavepoint(name));
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Transaction Savepoint", e.getClass(), e.getMessage());
+
+            return Resulted.inException(e);
+
+        }
+    }
+
+    /**
+     * Undoes the work done after the given savepoint, the transaction stays
+     * open.
+     *
+     * @param savepoint savepoint created by this transaction
+     * @return the result of the rollback
+     */
+    public Result rollback(@Nonnull Savepoint savepoint)
+    {
+        Verify.notNull(savepoint, "savepoint cannot be null.");
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        try {
+            atSQLConnection.rollback(savepoint);
+
+            return Result.VALID;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Transaction Savepoint Rollback", e.getClass(), e.getMessage());
+
+            return Result.exception(e);
+
+        }
+    }
+
+    public Result release(@Nonnull Savepoint savepoint)
+    {
+        Verify.notNull(savepoint, "savepoint cannot be null.");
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        try {
+            atSQLConnection.releaseSavepoint(savepoint);
+
+            return Result.VALID;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Transaction Savepoint Release", e.getClass(), e.getMessage());
+
+            return Result.exception(e);
+
+        }
+    }
+
+    /**
+     * Commits the transaction, applies the deferred query cache invalidations
+     * and returns the connection to the pool.
+     *
+     * @return the result of the commit
+     */
+    public Result commit()
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+        this.finished = true;
+
+        LOG.debug(LogPattern.ENTER, "Database Transaction Commit");
+
+        try {
+            atSQLConnection.commit();
+
+            for (int i = 0; i < writeQueries.size(); i++)
+                atSQL.invalidateWrite(writeQueries.get(i), writeTables.get(i));
+
+            return Result.VALID;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Transaction Commit", e.getClass(), e.getMessage());
+
+            atSQLConnection.rollback();
+
+            return Result.exception(e);
+
+        } finally {
+            Verify.closed(atSQLConnection);
+
+        }
+    }
+
+    /**
+     * Rolls back the whole transaction and returns the connection to the
+     * pool.
+     *
+     * @return the result of the rollback
+     */
+    public Result rollback()
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+        this.finished = true;
+
+        LOG.debug(LogPattern.ENTER, "Database Transaction Rollback");
+
+        try {
+            atSQLConnection.rollbackTransaction();
+
+            return Result.VALID;
+
+        } catch (SQLException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Database Transaction Rollback", e.getClass(), e.getMessage());
+
+            return Result.exception(e);
+
+        } finally {
+            Verify.closed(atSQLConnection);
+
+        }
+    }
+
+    public boolean isActive()
+    {
+        return !finished;
+    }
+
+    @Override
+    public void close()
+    {
+        if (!finished)
+            rollback();
+    }
+
+    AtSQLConnection connection()
+    {
+        Verify.notTrue(finished, "AtSQLTransaction cannot be used after commit or rollback");
+
+        return atSQLConnection.borrow();
+    }
+
+    void invalidateOnCommit(String query, String[] tables)
+    {
+        writeQueries.add(query);
+        writeTables.add(tables);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites a single-row {@code INSERT ... VALUES (?,...)} template into a
+ * multi-row {@code VALUES (?,...),(?,...)} statement.
+ * <p>
+ * Only templates whose VALUES tuple holds nothing but placeholders are
+ * recognized. Row counts are always powers of two so a handful of statement
+ * variants cover any batch, each variant is built once and its statement
+ * kept by the batch for as long as it holds its connection.
+ */
+class AtSQLValuesRewriter
+{
+    private static final Pattern INSERT_VALUES = Pattern.compile(
+            "^(\\s*INSERT\\s[^?]*?\\bVALUES\\s*)(\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\))([^?;]*?)\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final int VARIANTS = 31;
+
+    private final String   prefix;
+    private final String   tuple;
+    private final String   suffix;
+    private final int      width;
+    private final String[] variants;
+
+    private AtSQLValuesRewriter(String prefix, String tuple, String suffix)
+    {
+        this.prefix   = prefix;
+        this.tuple    = tuple;
+        this.suffix   = suffix;
+        this.width    = countParams(tuple);
+        this.variants = new String[VARIANTS];
+    }
+
+    /**
+     * @param query SQL template of a single row insert
+     * @return a rewriter for the template, or null when not recognized
+     */
+    static AtSQLValuesRewriter parse(String query)
+    {
+        Matcher matcher = INSERT_VALUES.matcher(query);
+
+        if (!matcher.matches())
+            return null;
+
+        return new AtSQLValuesRewriter(matcher.group(1), matcher.group(2), matcher.group(3));
+    }
+
+    int width()
+    {
+        return width;
+    }
+
+    /**
+     * @param rows number of rows, must be a power of two
+     * @return the statement inserting the given number of rows
+     */
+    String rewrite(int rows)
+    {
+        int variant = Integer.numberOfTrailingZeros(rows);
+
+        if (variants[variant] == null) {
+            StringBuilder builder = new StringBuilder(prefix.length() + (tuple.length() + 1) * rows + suffix.length());
+            builder.append(prefix).append(tuple);
+
+            for (int i = 1; i < rows; i++)
+                builder.append(',').append(tuple);
+
+            variants[variant] = builder.append(suffix).toString();
+        }
+
+        return variants[variant];
+    }
+
+    /**
+     * @param pending rows left to insert
+     * @param maxRows most rows allowed in a single statement
+     * @return the largest power of two not above either limit
+     */
+    static int chunkRows(int pending, int maxRows)
+    {
+        return Integer.highestOneBit(Math.max(Math.min(pending, maxRows), 1));
+    }
+
+    private static int countParams(String tuple)
+    {
+        int count = 0;
+
+        for (int i = 0; i < tuple.length(); i++)
+            if (tuple.charAt(i) == '?')
+                count++;
+
+        return count;
+    }
+}
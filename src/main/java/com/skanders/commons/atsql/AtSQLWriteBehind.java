@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.LogPattern;
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.def.Verify;
+import com.skanders.commons.result.Result;
+import com.skanders.commons.result.Resulted;
+import com.skanders.commons.worker.CycleWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+
+/**
+ * Buffers high frequency upserts and writes them as batches, created by
+ * {@link AtSQL#createWriteBehind(String)}.
+ * <p>
+ * Writes are coalesced by key so only the latest params of a key, or the
+ * params merged by {@link #withMerge(BinaryOperator)}, reach the database.
+ * The buffer is flushed by a {@link CycleWorker} every flush interval and
+ * as soon as it holds the flush size. Writers block while the buffer holds
+ * its capacity of keys. A failed flush puts its rows back in the buffer,
+ * and {@link #shutdown()}, also called by {@link AtSQL#close()}, flushes
+ * whatever is left and reports rows it could not write.
+ *
+ * @param <K> type of the key writes are coalesced by
+ */
+public class AtSQLWriteBehind<K> implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AtSQLWriteBehind.class);
+
+    private static final String WORKER_NAME = "AtSQL Write Behind";
+
+    private static final int      DEFAULT_CAPACITY       = 100_000;
+    private static final int      DEFAULT_FLUSH_SIZE     = 1_000;
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final int      FINAL_FLUSH_ATTEMPTS = 3;
+    private static final Duration FINAL_FLUSH_BACKOFF  = Duration.ofMillis(200);
+
+    private final AtSQL                          atSQL;
+    private final String                         query;
+    private final ConcurrentHashMap<K, Object[]> buffer;
+    private final ReadWriteLock                  closeLock;
+    private final Object                         flushLock;
+    private final AtomicBoolean                  flushRequested;
+    private final LongAdder                      writes;
+    private final LongAdder                      coalesced;
+    private final LongAdder                      flushedRows;
+
+    private BinaryOperator<Object[]> merge;
+    private int                      capacity;
+    private int                      flushSize;
+    private Duration                 flushInterval;
+
+    private Semaphore        permits;
+    private CycleWorker      cycleWorker;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    AtSQLWriteBehind(@Nonnull AtSQL atSQL, @Nonnull String query)
+    {
+        Verify.notNull(atSQL, "atSQL cannot be null.");
+        Verify.notNull(query, "query cannot be null.");
+
+        this.atSQL          = atSQL;
+        this.query          = query;
+        this.buffer         = new ConcurrentHashMap<>();
+        this.closeLock      = new ReentrantReadWriteLock();
+        this.flushLock      = new Object();
+        this.flushRequested = new AtomicBoolean(false);
+        this.writes         = new LongAdder();
+        this.coalesced      = new LongAdder();
+        this.flushedRows    = new LongAdder();
+
+        this.merge         = null;
+        this.capacity      = DEFAULT_CAPACITY;
+        this.flushSize     = DEFAULT_FLUSH_SIZE;
+        this.flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+        this.permits     = null;
+        this.cycleWorker = null;
+        this.started     = false;
+        this.closed      = false;
+    }
+
+    /**
+     * Merges the params of a key already buffered with the params written
+     * for it, instead of keeping the last write.
+     *
+     * @param merge given the buffered params then the written params,
+     *              returns the params to buffer
+     * @return this instance of AtSQLWriteBehind
+     */
+    public AtSQLWriteBehind<K> withMerge(@Nonnull BinaryOperator<Object[]> merge)
+    {
+        Verify.notNull(merge, "merge cannot be null.");
+        Verify.notTrue(started, "withMerge cannot be called once started");
+
+        this.merge = merge;
+
+        return this;
+    }
+
+    /**
+     * @param capacity most keys buffered before writers block, 100000 by default
+     * @return this instance of AtSQLWriteBehind
+     */
+    public AtSQLWriteBehind<K> withCapacity(int capacity)
+    {
+        Verify.isTrue(capacity > 0, "capacity must be greater than 0.");
+        Verify.notTrue(started, "withCapacity cannot be called once started");
+
+        this.capacity = capacity;
+
+        return this;
+    }
+
+    /**
+     * @param flushSize keys buffered that trigger a flush, 1000 by default
+     * @return this instance of AtSQLWriteBehind
+     */
+    public AtSQLWriteBehind<K> withFlushSize(int flushSize)
+    {
+        Verify.isTrue(flushSize > 0, "flushSize must be greater than 0.");
+        Verify.notTrue(started, "withFlushSize cannot be called once started");
+
+        this.flushSize = flushSize;
+
+        return this;
+    }
+
+    /**
+     * @param flushInterval longest a write stays buffered, 1 second by default
+     * @return this instance of AtSQLWriteBehind
+     */
+    public AtSQLWriteBehind<K> withFlushInterval(@Nonnull Duration flushInterval)
+    {
+        Verify.notNull(flushInterval, "flushInterval cannot be null.");
+        Verify.isTrue(!flushInterval.isNegative() && !flushInterval.isZero(), "flushInterval must be positive.");
+        Verify.notTrue(started, "withFlushInterval cannot be called once started");
+
+        this.flushInterval = flushInterval;
+
+        return this;
+    }
+
+    /**
+     * Starts the worker flushing the buffer, writes are accepted from then on.
+     *
+     * @return this instance of AtSQLWriteBehind
+     */
+    public synchronized AtSQLWriteBehind<K> start()
+    {
+        Verify.notTrue(started, "AtSQLWriteBehind has already been started");
+
+        this.permits     = new Semaphore(capacity);
+        this.cycleWorker = CycleWorker.create(flushInterval, this::flushQuietly, WORKER_NAME);
+        this.started     = true;
+
+        atSQL.register(this);
+        cycleWorker.start();
+
+        return this;
+    }
+
+    /**
+     * Buffers the params of the upsert for the key, blocking while the
+     * buffer is full.
+     *
+     * @param key    key the write is coalesced by
+     * @param params params of the upsert
+     * @return {@link Result#VALID} once buffered, an exception result if
+     * interrupted while waiting
+     */
+    public Result write(@Nonnull K key, Object... params)
+    {
+        Verify.notNull(key, "key cannot be null.");
+        Verify.isTrue(started, "AtSQLWriteBehind must be started before writing");
+
+        Object[] row = Arrays.copyOf(params, params.length);
+
+        if (coalesce(key, row))
+            return Result.VALID;
+
+        try {
+            permits.acquire();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Result.exception(e);
+
+        }
+
+        buffer(key, row);
+
+        return Result.VALID;
+    }
+
+    /**
+     * Buffers the params of the upsert for the key, waiting at most the
+     * timeout for room in the buffer.
+     *
+     * @param key     key the write is coalesced by
+     * @param timeout longest to wait for room in the buffer
+     * @param params  params of the upsert
+     * @return {@link Result#VALID} once buffered, an exception result if the
+     * buffer stayed full or the wait was interrupted
+     */
+    public Result offer(@Nonnull K key, @Nonnull Duration timeout, Object... params)
+    {
+        Verify.notNull(key, "key cannot be null.");
+        Verify.notNull(timeout, "timeout cannot be null.");
+        Verify.isTrue(started, "AtSQLWriteBehind must be started before writing");
+
+        Object[] row = Arrays.copyOf(params, params.length);
+
+        if (coalesce(key, row))
+            return Result.VALID;
+
+        try {
+            if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS))
+                return Result.exception("Write behind buffer is full");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Result.exception(e);
+
+        }
+
+        buffer(key, row);
+
+        return Result.VALID;
+    }
+
+    /**
+     * Writes every buffered key as a batch. Rows of a failed batch are put
+     * back in the buffer to be retried by the next flush.
+     *
+     * @return the result of the batch
+     */
+    public Result flush()
+    {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+
+            if (buffer.isEmpty())
+                return Result.VALID;
+
+            List<K>        keys = new ArrayList<>(buffer.size());
+            List<Object[]> rows = new ArrayList<>(buffer.size());
+
+            for (K key : buffer.keySet()) {
+                Object[] row = buffer.remove(key);
+
+                if (row != null) {
+                    keys.add(key);
+                    rows.add(row);
+                }
+            }
+
+            if (rows.isEmpty())
+                return Result.VALID;
+
+            boolean written = false;
+
+            try (AtSQLBatch atSQLBatch = atSQL.createBatch(query).withChunkSize(flushSize)) {
+                Resulted<int[]> resulted = atSQLBatch.executeBatch(rows.iterator());
+
+                if (resulted.notValid()) {
+                    LOG.error(LogPattern.EXIT_FAIL, "Write Behind Flush", resulted.result().code(),
+                            resulted.result().message());
+
+                    return resulted.result();
+                }
+
+                written = true;
+
+            } finally {
+                // Rows are requeued on any failure, including exceptions, so their permits stay accounted for
+                if (written) {
+                    flushedRows.add(rows.size());
+                    permits.release(rows.size());
+
+                } else {
+                    for (int i = 0; i < keys.size(); i++)
+                        requeue(keys.get(i), rows.get(i));
+
+                }
+            }
+
+            return Result.VALID;
+        }
+    }
+
+    /**
+     * @return number of keys waiting to be flushed
+     */
+    public int getPending()
+    {
+        return buffer.size();
+    }
+
+    /**
+     * @return number of writes accepted
+     */
+    public long getWrites()
+    {
+        return writes.sum();
+    }
+
+    /**
+     * @return number of writes folded into a key already buffered
+     */
+    public long getCoalesced()
+    {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of rows written to the database
+     */
+    public long getFlushedRows()
+    {
+        return flushedRows.sum();
+    }
+
+    /**
+     * Stops the worker, waiting for a flush in progress, and flushes every
+     * key still buffered, retrying a failed flush up to 3 times. Writes are
+     * refused from then on.
+     *
+     * @return {@link Result#VALID} once every key is written, otherwise the
+     * result of the last flush with the keys left in {@link #getPending()}
+     */
+    public Result shutdown()
+    {
+        closeLock.writeLock().lock();
+
+        try {
+            if (closed || !started)
+                return buffer.isEmpty() ? Result.VALID : Result.exception(getPending() + " writes were not flushed");
+
+            closed = true;
+
+        } finally {
+            closeLock.writeLock().unlock();
+
+        }
+
+        cycleWorker.shutdown();
+        atSQL.unregister(this);
+
+        Result result = flush();
+
+        for (int attempt = 1; result.notValid() && attempt < FINAL_FLUSH_ATTEMPTS; attempt++) {
+            try {
+                Thread.sleep(FINAL_FLUSH_BACKOFF.toMillis() * attempt);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+
+            }
+
+            result = flush();
+        }
+
+        if (result.notValid())
+            LOG.error(LogPattern.EXIT_FAIL, "Write Behind Shutdown", result.code(), result.message());
+
+        return result;
+    }
+
+    /**
+     * @throws SkandersException when buffered writes could not be flushed
+     * @see #shutdown()
+     */
+    @Override
+    public void close()
+    {
+        Result result = shutdown();
+
+        if (result.notValid())
+            throw new SkandersException(getPending() + " writes were not flushed: " + result.message());
+    }
+
+    /**
+     * Folds the row into the key when already buffered, no room in the
+     * buffer is needed then.
+     */
+    private boolean coalesce(K key, Object[] row)
+    {
+        closeLock.readLock().lock();
+
+        try {
+            Verify.notTrue(closed, "AtSQLWriteBehind cannot be written to after closed");
+
+            if (buffer.computeIfPresent(key, (k, buffered) -> merge(buffered, row)) == null)
+                return false;
+
+            writes.increment();
+            coalesced.increment();
+
+            return true;
+
+        } finally {
+            closeLock.readLock().unlock();
+
+        }
+    }
+
+    /**
+     * Buffers the row holding a permit, given back if the key was buffered
+     * by another writer in the meantime, and wakes the worker once the
+     * buffer holds the flush size.
+     */
+    private void buffer(K key, Object[] row)
+    {
+        boolean[] added = new boolean[1];
+
+        closeLock.readLock().lock();
+
+        try {
+            if (closed) {
+                permits.release();
+                Verify.notTrue(closed, "AtSQLWriteBehind cannot be written to after closed");
+            }
+
+            buffer.compute(key, (k, buffered) -> {
+                added[0] = buffered == null;
+
+                return added[0] ? row : merge(buffered, row);
+            });
+
+            writes.increment();
+
+            // Held under the read lock so close() cannot shut the worker down in between
+            if (buffer.size() >= flushSize && flushRequested.compareAndSet(false, true))
+                cycleWorker.invoke();
+
+        } finally {
+            closeLock.readLock().unlock();
+
+        }
+
+        if (!added[0]) {
+            coalesced.increment();
+            permits.release();
+        }
+    }
+
+    private void requeue(K key, Object[] row)
+    {
+        boolean[] added = new boolean[1];
+
+        buffer.compute(key, (k, buffered) -> {
+            added[0] = buffered == null;
+
+            return added[0] ? row : merge(row, buffered);
+        });
+
+        if (!added[0])
+            permits.release();
+    }
+
+    private Object[] merge(Object[] buffered, Object[] row)
+    {
+        return merge != null ? merge.apply(buffered, row) : row;
+    }
+
+    private void flushQuietly()
+    {
+        try {
+            flush();
+
+        } catch (RuntimeException e) {
+            LOG.error(LogPattern.EXIT_FAIL, "Write Behind Flush", e.getClass(), e.getMessage());
+
+        }
+    }
+}
@@ -179,6 +179,16 @@ public class CycleWorker
         }
     }
 
+    /**
+     * Stops scheduling the function and releases the worker thread, a run in
+     * progress is left to complete.
+     */
+    public void shutdown()
+    {
+        worker.shutdown();
+        this.state = WorkerState.STOPPED;
+    }
+
     public WorkerState getState()
     {
         return state;
@@ -30,17 +30,21 @@ public class Resources
     public static final AtSQL AT_SQL;
 
     static {
+        AT_SQL = newFactory().build();
+    }
+
+    public static AtSQLFactory newFactory()
+    {
         ArgFile argFile = ArgFile.parse(getFilePath("db.txt"));
 
         System.out.println(argFile.copyAsString("jdbcUrl"));
 
-        AT_SQL = AtSQLFactory.newInstance(
+        return AtSQLFactory.newInstance(
                 argFile.copyAsString("username"),
                 argFile.copyAsString("password"),
                 30000, 10)
                 .withJdbcUrl(argFile.copyAsString("jdbcUrl"))
-                .withMySQLPerformanceSettings()
-                .build();
+                .withMySQLPerformanceSettings();
     }
 
     public static String getFilePath(String fileName)
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import com.skanders.commons.result.Resulted;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLBatchKeysTest
+{
+    private static final String INSERT = "INSERT INTO atsql_keys (name) VALUES (?)";
+
+    @Test
+    public void alignKeysInOrder() throws SQLException
+    {
+        long[] aligned = AtSQLBatch.alignKeys(new int[]{1, 1, 1}, new long[]{7, 8, 9});
+
+        assertArrayEquals(new long[]{7, 8, 9}, aligned);
+    }
+
+    @Test
+    public void alignKeysSkipsUnchangedRows() throws SQLException
+    {
+        long[] aligned = AtSQLBatch.alignKeys(new int[]{1, 0, Statement.SUCCESS_NO_INFO, 0}, new long[]{7, 8});
+
+        assertArrayEquals(new long[]{7, 0, 8, 0}, aligned);
+    }
+
+    @Test
+    public void alignKeysMissingKeys() throws SQLException
+    {
+        long[] aligned = AtSQLBatch.alignKeys(new int[]{1, Statement.EXECUTE_FAILED, 1, 1}, new long[]{3});
+
+        assertArrayEquals(new long[]{3, 0, 0, 0}, aligned);
+    }
+
+    @Test
+    public void alignKeysAmbiguous()
+    {
+        int[] updates = {Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO};
+
+        assertThrows(SQLException.class, () -> AtSQLBatch.alignKeys(updates, new long[]{4, 5}));
+    }
+
+    @Test
+    public void chunkedInsertKeys()
+    {
+        createTable("batch");
+
+        AtSQLBatch atSQLBatch = Resources.AT_SQL.createBatch(INSERT)
+                .withChunkSize(3)
+                .withGeneratedKeys();
+
+        for (int i = 0; i < 10; i++)
+            atSQLBatch.setList("batch" + i);
+
+        assertFalse(atSQLBatch.executeBatch().notValid());
+        assertKeys("batch", atSQLBatch.getGeneratedKeys());
+    }
+
+    @Test
+    public void chunkedRewrittenInsertKeys()
+    {
+        createTable("rewrite");
+
+        AtSQLBatch atSQLBatch = Resources.AT_SQL.createBatch(INSERT)
+                .withChunkSize(3)
+                .withValuesRewrite()
+                .withGeneratedKeys();
+
+        for (int i = 0; i < 10; i++)
+            atSQLBatch.setList("rewrite" + i);
+
+        assertFalse(atSQLBatch.executeBatch().notValid());
+        assertKeys("rewrite", atSQLBatch.getGeneratedKeys());
+    }
+
+    @Test
+    public void skippedRowsCannotAlign()
+    {
+        createTable("ignored");
+
+        Resources.AT_SQL.createQuery(INSERT).setList("ignored1").executeUpdate();
+
+        Resulted<int[]> resulted = Resources.AT_SQL.createBatch("INSERT IGNORE INTO atsql_keys (name) VALUES (?)")
+                .withValuesRewrite()
+                .withGeneratedKeys()
+                .setList("ignored0")
+                .setList("ignored1")
+                .setList("ignored2")
+                .executeBatch();
+
+        assertTrue(resulted.notValid());
+    }
+
+    private static void createTable(String prefix)
+    {
+        Resources.AT_SQL.createQuery("CREATE TABLE IF NOT EXISTS atsql_keys " +
+                "(id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(32) NOT NULL UNIQUE)").executeUpdate();
+
+        Resources.AT_SQL.createQuery("DELETE FROM atsql_keys WHERE name LIKE ?").setList(prefix + "%").executeUpdate();
+    }
+
+    private static void assertKeys(String prefix, long[] keys)
+    {
+        Resulted<List<Object[]>> rows = Resources.AT_SQL
+                .createQuery("SELECT id, name FROM atsql_keys WHERE name LIKE ?")
+                .setList(prefix + "%")
+                .executeQuery(rs -> new Object[]{rs.getLong(1), rs.getString(2)});
+
+        assertFalse(rows.notValid());
+
+        Map<String, Long> ids = new HashMap<>();
+
+        for (Object[] row : rows.value())
+            ids.put((String) row[1], (Long) row[0]);
+
+        assertEquals(10, keys.length);
+
+        for (int i = 0; i < keys.length; i++)
+            assertEquals((long) ids.get(prefix + i), keys[i]);
+    }
+}
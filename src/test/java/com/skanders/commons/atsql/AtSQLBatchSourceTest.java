@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AtSQLBatchSourceTest
+{
+    @Test
+    public void blocksPendingThenIterator() throws SQLException
+    {
+        AtSQLParamList pending = new AtSQLParamList(1, "a", 2, "b");
+        Iterator<Object[]> rows = Arrays.asList(new Object[]{3, "c"}, new Object[]{4, "d"}, new Object[]{5, "e"}).iterator();
+
+        AtSQLBatchSource source = new AtSQLBatchSource(pending, 2, rows, 2, 2, 0);
+        AtSQLParamList   block  = new AtSQLParamList();
+
+        assertEquals(0, source.next(block));
+        assertEquals(4, block.size());
+        assertEquals(2, block.getValue(2));
+
+        assertEquals(2, source.next(block));
+        assertEquals(4, block.size());
+        assertEquals(3, block.getValue(0));
+
+        assertEquals(4, source.next(block));
+        assertEquals(2, block.size());
+
+        assertEquals(-1, source.next(block));
+    }
+
+    @Test
+    public void mergeInRowOrder() throws SQLException
+    {
+        AtSQLParamList pending = new AtSQLParamList(1, 2, 3, 4, 5);
+
+        AtSQLBatchSource source = new AtSQLBatchSource(pending, 5, Arrays.<Object[]>asList().iterator(), 1, 2, 0);
+        AtSQLParamList   block  = new AtSQLParamList();
+
+        int first  = source.next(block);
+        int second = source.next(block);
+        int third  = source.next(block);
+
+        source.store(third, new int[]{5});
+        source.store(first, new int[]{1, 2});
+
+        assertArrayEquals(new int[]{1, 2, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED, 5}, source.updateCounts());
+        assertEquals(2, second);
+    }
+
+    @Test
+    public void widthMismatch()
+    {
+        Iterator<Object[]> rows = Arrays.asList(new Object[]{1, "a"}, new Object[]{2}).iterator();
+
+        AtSQLBatchSource source = new AtSQLBatchSource(new AtSQLParamList(), 0, rows, 2, 10, 0);
+
+        assertThrows(SQLException.class, () -> source.next(new AtSQLParamList()));
+    }
+}
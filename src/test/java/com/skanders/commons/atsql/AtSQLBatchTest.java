@@ -22,7 +22,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Types;
+import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 public class AtSQLBatchTest
@@ -108,4 +110,60 @@ public class AtSQLBatchTest
 
         assertFalse(resulted.notValid());
     }
+
+    @Test
+    public void batchInsertChunked()
+    {
+        String query = "\n" +
+                "INSERT INTO student \n" +
+                "     (id, name, age, major, year) \n" +
+                "VALUES \n" +
+                "     (?,?,?,?,?)";
+
+        Resulted<int[]> resulted = Resources.AT_SQL.createBatch(query)
+                .withChunkSize(2)
+                .withChunkCommit()
+                .executeBatch(IntStream.rangeClosed(16, 20)
+                        .mapToObj(i -> new Object[]{i, "Student" + i, i + 17, "CS", i}));
+
+        assertFalse(resulted.notValid());
+        assertEquals(5, resulted.value().length);
+    }
+
+    @Test
+    public void batchInsertValuesRewrite()
+    {
+        String query = "\n" +
+                "INSERT INTO student \n" +
+                "     (id, name, age, major, year) \n" +
+                "VALUES \n" +
+                "     (?,?,?,?,?)";
+
+        Resulted<int[]> resulted = Resources.AT_SQL.createBatch(query)
+                .withValuesRewrite(20, 1024 * 1024)
+                .executeBatch(IntStream.rangeClosed(21, 27)
+                        .mapToObj(i -> new Object[]{i, "Student" + i, i + 17, "CS", i}));
+
+        assertFalse(resulted.notValid());
+        assertEquals(7, resulted.value().length);
+    }
+
+    @Test
+    public void batchInsertParallel()
+    {
+        String query = "\n" +
+                "INSERT INTO student \n" +
+                "     (id, name, age, major, year) \n" +
+                "VALUES \n" +
+                "     (?,?,?,?,?)";
+
+        AtSQLParallelResult result = Resources.AT_SQL.createBatch(query)
+                .withChunkSize(2)
+                .executeParallel(3, IntStream.rangeClosed(28, 37)
+                        .mapToObj(i -> new Object[]{i, "Student" + i, i + 17, "CS", i}));
+
+        assertFalse(result.notValid());
+        assertEquals(3, result.getPartitions().size());
+        assertEquals(10, result.getUpdateCounts().length);
+    }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLBeanMapperTest
+{
+    @Test
+    public void mapSetters() throws SQLException
+    {
+        ResultSet rs = students();
+
+        AtSQLRowMapper<Student> mapper = AtSQLBeanMapper.forResultSet(rs, Student.class);
+
+        assertTrue(rs.absolute(row(rs, 1)));
+        Student student = mapper.map(rs);
+
+        assertEquals(1, student.getId());
+        assertEquals("Student1", student.getName());
+        assertEquals(18L, student.getAge());
+        assertEquals("CS", student.major);
+
+        assertTrue(rs.absolute(row(rs, 2)));
+        student = mapper.map(rs);
+
+        assertEquals(2, student.getId());
+        assertNull(student.getName());
+    }
+
+    @Test
+    public void mapCreator() throws SQLException
+    {
+        ResultSet rs = students();
+
+        AtSQLRowMapper<StudentView> mapper = AtSQLBeanMapper.forResultSet(rs, StudentView.class);
+
+        assertTrue(rs.absolute(row(rs, 1)));
+        StudentView view = mapper.map(rs);
+
+        assertEquals(1, view.id);
+        assertEquals("Student1", view.name);
+        assertEquals(0.0, view.gpa);
+    }
+
+    @Test
+    public void planCached() throws SQLException
+    {
+        assertSame(AtSQLBeanMapper.forResultSet(students(), Student.class),
+                AtSQLBeanMapper.forResultSet(students(), Student.class));
+    }
+
+    private static int row(ResultSet rs, int id) throws SQLException
+    {
+        rs.beforeFirst();
+
+        while (rs.next())
+            if (rs.getInt(1) == id)
+                return rs.getRow();
+
+        return 0;
+    }
+
+    private static ResultSet students() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        column(metaData, 1, "id", Types.INTEGER);
+        column(metaData, 2, "name", Types.VARCHAR);
+        column(metaData, 3, "student_age", Types.BIGINT);
+        column(metaData, 4, "major", Types.VARCHAR);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        rows.moveToInsertRow();
+        rows.updateInt(1, 1);
+        rows.updateString(2, "Student1");
+        rows.updateLong(3, 18L);
+        rows.updateString(4, "CS");
+        rows.insertRow();
+
+        rows.updateInt(1, 2);
+        rows.updateNull(2);
+        rows.updateLong(3, 19L);
+        rows.updateString(4, "CS");
+        rows.insertRow();
+
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        return rows;
+    }
+
+    private static void column(RowSetMetaDataImpl metaData, int index, String name, int type) throws SQLException
+    {
+        metaData.setColumnName(index, name);
+        metaData.setColumnLabel(index, name);
+        metaData.setColumnType(index, type);
+    }
+
+    public static class Student
+    {
+        private int    id;
+        private String name;
+        private long   age;
+
+        @JsonProperty("major")
+        String major;
+
+        public int getId()
+        {
+            return id;
+        }
+
+        public void setId(int id)
+        {
+            this.id = id;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+
+        public long getAge()
+        {
+            return age;
+        }
+
+        @JsonProperty("student_age")
+        public void setAge(long age)
+        {
+            this.age = age;
+        }
+    }
+
+    public static class StudentView
+    {
+        private final int    id;
+        private final String name;
+        private final double gpa;
+
+        @JsonCreator
+        public StudentView(@JsonProperty("id") int id, @JsonProperty("name") String name,
+                           @JsonProperty("gpa") double gpa)
+        {
+            this.id   = id;
+            this.name = name;
+            this.gpa  = gpa;
+        }
+    }
+}
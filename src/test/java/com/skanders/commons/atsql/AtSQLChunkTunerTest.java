@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLChunkTunerTest
+{
+    private static final long MAX_LATENCY = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void growsWhileThroughputHolds()
+    {
+        AtSQLChunkTuner tuner = new AtSQLChunkTuner(100, 1700, MAX_LATENCY);
+
+        for (int i = 0; i < 20; i++)
+            tuner.record(tuner.size(), TimeUnit.MICROSECONDS.toNanos(tuner.size()));
+
+        assertEquals(1700, tuner.size());
+        assertEquals(1_000_000, tuner.throughput(), 1);
+    }
+
+    @Test
+    public void halvesOnSlowFlush()
+    {
+        AtSQLChunkTuner tuner = new AtSQLChunkTuner(100, 1700, MAX_LATENCY);
+
+        for (int i = 0; i < 8; i++)
+            tuner.record(tuner.size(), TimeUnit.MICROSECONDS.toNanos(tuner.size()));
+
+        assertEquals(900, tuner.size());
+
+        tuner.record(900, TimeUnit.SECONDS.toNanos(2));
+        assertEquals(450, tuner.size());
+
+        tuner.record(450, TimeUnit.MILLISECONDS.toNanos(450 * 10));
+        assertEquals(225, tuner.size());
+
+        for (int i = 0; i < 4; i++)
+            tuner.record(tuner.size(), TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(100, tuner.size());
+    }
+
+    @Test
+    public void ignoresPartialChunks()
+    {
+        AtSQLChunkTuner tuner = new AtSQLChunkTuner(100, 1700, MAX_LATENCY);
+
+        tuner.record(10, TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(100, tuner.size());
+        assertTrue(tuner.throughput() > 0);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import com.skanders.commons.result.Resulted;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLFanOutTest
+{
+    @Test
+    public void fanOutGathersByName()
+    {
+        AtSQLFanOutResult result = Resources.AT_SQL.fanOut()
+                .add("one", Resources.AT_SQL.createQuery("SELECT 1"), rs -> rs.getInt(1))
+                .add("two", Resources.AT_SQL.createQuery("SELECT 2"), rs -> rs.getInt(1))
+                .withDeadline(Duration.ofSeconds(5))
+                .execute();
+
+        assertFalse(result.notValid());
+
+        Resulted<List<Integer>> two = result.get("two");
+
+        assertEquals(2, (int) two.value().get(0));
+        assertEquals(1, (int) result.<Integer>get("one").value().get(0));
+    }
+
+    @Test
+    public void fanOutDeadlineKeepsOthers()
+    {
+        AtSQLFanOutResult result = Resources.AT_SQL.fanOut()
+                .add("fast", Resources.AT_SQL.createQuery("SELECT 1"), rs -> rs.getInt(1))
+                .add("slow", Resources.AT_SQL.createQuery("SELECT SLEEP(3)"), rs -> rs.getInt(1))
+                .withDeadline(Duration.ofSeconds(1))
+                .execute();
+
+        assertTrue(result.notValid());
+        assertFalse(result.get("fast").notValid());
+        assertEquals(1, result.getFailed().size());
+        assertEquals("slow", result.getFailed().get(0));
+    }
+}
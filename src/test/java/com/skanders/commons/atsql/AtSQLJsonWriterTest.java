@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.skanders.commons.convert.Mapper;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AtSQLJsonWriterTest
+{
+    @Test
+    public void writeJson() throws SQLException, IOException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        column(metaData, 1, "id", Types.INTEGER);
+        column(metaData, 2, "name", Types.VARCHAR);
+        column(metaData, 3, "gpa", Types.DECIMAL);
+        column(metaData, 4, "active", Types.BOOLEAN);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        rows.moveToInsertRow();
+        rows.updateInt(1, 1);
+        rows.updateNull(2);
+        rows.updateBigDecimal(3, new BigDecimal("3.50"));
+        rows.updateBoolean(4, true);
+        rows.insertRow();
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        AtSQLResult.detached(rows).writeJson(outputStream);
+
+        assertEquals("[{\"id\":1,\"name\":null,\"gpa\":3.50,\"active\":true}]",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeJsonUnsignedInt() throws SQLException, IOException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        column(metaData, 1, "id", Types.BIGINT);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        rows.moveToInsertRow();
+        rows.updateLong(1, 4_000_000_000L);
+        rows.insertRow();
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        // The row set refuses the value as an INTEGER, so only the reported type is changed
+        RowSetMetaDataImpl unsigned = new RowSetMetaDataImpl();
+        unsigned.setColumnCount(1);
+        column(unsigned, 1, "id", Types.INTEGER);
+        unsigned.setSigned(1, false);
+
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMetaData"))
+                        return unsigned;
+
+                    try {
+                        return method.invoke(rows, args);
+
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+
+                    }
+                });
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        AtSQLResult.detached(resultSet).writeJson(outputStream);
+
+        assertEquals("[{\"id\":4000000000}]", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeJsonFailureLeavesInvalidJson() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(2);
+        column(metaData, 1, "id", Types.INTEGER);
+        column(metaData, 2, "name", Types.VARCHAR);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        for (int id = 1; id <= 2; id++) {
+            rows.moveToInsertRow();
+            rows.updateInt(1, id);
+            rows.updateString(2, "Student" + id);
+            rows.insertRow();
+        }
+
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        int[]     reads     = new int[1];
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("next") && ++reads[0] == 2)
+                        throw new SQLException("Connection lost");
+
+                    try {
+                        return method.invoke(rows, args);
+
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+
+                    }
+                });
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assertThrows(IOException.class, () -> AtSQLResult.detached(resultSet).writeJson(outputStream));
+
+        String json = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+
+        assertThrows(JsonProcessingException.class, () -> Mapper.forJson().readTree(json));
+    }
+
+    @Test
+    public void writeJsonEmpty() throws SQLException, IOException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        column(metaData, 1, "id", Types.INTEGER);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        AtSQLResult.detached(rows).toStreamingOutput().write(outputStream);
+
+        assertEquals("[]", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static void column(RowSetMetaDataImpl metaData, int index, String name, int type) throws SQLException
+    {
+        metaData.setColumnName(index, name);
+        metaData.setColumnLabel(index, name);
+        metaData.setColumnType(index, type);
+        metaData.setSigned(index, true);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLMetricsTest
+{
+    @Test
+    public void histogramBuckets()
+    {
+        for (long value : new long[]{0, 1, 3, 4, 7, 8, 9, 15, 16, 1000, 123456789L, Long.MAX_VALUE}) {
+            int  index = AtSQLHistogram.index(value);
+            long upper = AtSQLHistogram.upperBound(index);
+
+            assertTrue(upper >= value, "upper bound below " + value);
+            assertTrue(index == 0 || AtSQLHistogram.upperBound(index - 1) < value, "lower bound above " + value);
+        }
+    }
+
+    @Test
+    public void histogramPercentiles()
+    {
+        AtSQLHistogram histogram = new AtSQLHistogram();
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000L);
+
+        AtSQLHistogramStats stats = histogram.snapshot();
+
+        assertEquals(100, stats.getCount());
+        assertEquals(100000, stats.getMax());
+        assertEquals(50500.0, stats.getMean());
+        assertTrue(Math.abs(stats.getP50() - 50000) <= 12500);
+        assertTrue(Math.abs(stats.getP99() - 99000) <= 25000);
+        assertTrue(stats.getP99() <= stats.getMax());
+    }
+
+    @Test
+    public void fingerprint()
+    {
+        assertEquals("SELECT * FROM student WHERE id = ? AND name = ?",
+                AtSQLFingerprint.normalize("SELECT *\n  FROM student -- all\n WHERE id = 42 AND name = 'O''Brien'"));
+        assertEquals("SELECT * FROM t1 WHERE id IN (?+)",
+                AtSQLFingerprint.normalize("SELECT * /* hint */ FROM t1 WHERE id IN (?, ?, ?)"));
+        assertEquals("INSERT INTO student (id, name) VALUES (?+)+",
+                AtSQLFingerprint.normalize("INSERT INTO student (id, name) VALUES (?,?),(?,?),(?,?)"));
+    }
+
+    @Test
+    public void recordPerFingerprint()
+    {
+        AtSQLMetrics metrics = new AtSQLMetrics(new HikariDataSource());
+
+        metrics.recordExecute("SELECT * FROM student WHERE id = 1", 1000);
+        metrics.recordExecute("SELECT * FROM student WHERE id = 2", 3000);
+        metrics.recordRows("SELECT * FROM student WHERE id = 2", 1);
+
+        AtSQLMetricsSnapshot snapshot = metrics.snapshot();
+        AtSQLStatementStats  stats    = snapshot.getStatements().get("SELECT * FROM student WHERE id = ?");
+
+        assertEquals(1, snapshot.getStatements().size());
+        assertEquals(2, stats.getExecuteNanos().getCount());
+        assertEquals(1, stats.getRowsFetched().getCount());
+        assertEquals(0, snapshot.getActiveConnections());
+    }
+
+    @Test
+    public void registerMXBean() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName  name   = new ObjectName("com.skanders.commons.atsql:type=AtSQL,name=test");
+
+        server.registerMBean(new AtSQLMetrics(new HikariDataSource()), name);
+
+        try {
+            assertEquals(0, server.getAttribute(name, "ActiveConnections"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -21,9 +21,12 @@ import com.skanders.commons.result.Resulted;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.sql.Statement;
 import java.sql.Types;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AtSQLMultiBatchTest
 {
@@ -108,4 +111,32 @@ public class AtSQLMultiBatchTest
 
         assertFalse(resulted.notValid());
     }
+
+    @Test
+    public void batchInsertGrouped()
+    {
+        String insert = "\n" +
+                "INSERT INTO student \n" +
+                "     (id, name, age, major, year) \n" +
+                "VALUES \n" +
+                "     (?,?,?,?,?)";
+
+        String update = "UPDATE student SET year = ? WHERE id = ?";
+
+        AtSQLMultiBatch atSQLBatch = Resources.AT_SQL.createMultiBatch()
+                .withFullGrouping()
+                .setQuery(insert).setList(16, "Student16", 33, "CS", 1)
+                .setQuery(update).setList(2, 16)
+                .setQuery(insert).setList(17, "Student17", 34, "CS", 1)
+                .setQuery(update).setList(2, 17)
+                .setQuery(insert).setList(18, "Student18", 35, "CS", 1);
+
+        Resulted<int[]> resulted = atSQLBatch.executeBatch();
+
+        assertFalse(resulted.notValid());
+        assertEquals(5, resulted.value().length);
+
+        for (int count : resulted.value())
+            assertTrue(count == 1 || count == Statement.SUCCESS_NO_INFO);
+    }
 }
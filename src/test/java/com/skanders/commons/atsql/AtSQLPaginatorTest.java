@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class AtSQLPaginatorTest
+{
+    private static final String SELECT = "SELECT id, name FROM student WHERE id > ? AND id <= ?";
+
+    @BeforeAll
+    public static void fillDb()
+    {
+        Resources.AT_SQL.createQuery("DELETE FROM student WHERE id > 300 AND id <= 325;").executeUpdate();
+
+        AtSQLBatch atSQLBatch = Resources.AT_SQL.createBatch(
+                "INSERT INTO student (id, name, age, major, year) VALUES (?,?,?,?,?)");
+
+        for (int i = 301; i <= 325; i++)
+            atSQLBatch.setList(i, "Student" + i, 18, "CS", 1);
+
+        assertFalse(atSQLBatch.executeBatch().notValid());
+    }
+
+    @Test
+    public void paginateAll()
+    {
+        List<Integer> ids   = new ArrayList<>();
+        int           pages = 0;
+
+        try (AtSQLPageIterator<Integer> iterator = Resources.AT_SQL.paginate(SELECT, "id", 10)
+                .setList(300, 325)
+                .iterator(rs -> rs.getInt("id"))) {
+
+            while (iterator.hasNext()) {
+                ids.addAll(iterator.next());
+                pages++;
+            }
+        }
+
+        assertEquals(3, pages);
+        assertEquals(25, ids.size());
+        assertEquals(301, (int) ids.get(0));
+        assertEquals(325, (int) ids.get(24));
+    }
+
+    @Test
+    public void paginatePrefetchFromKey()
+    {
+        List<Integer> ids = new ArrayList<>();
+
+        try (AtSQLPageIterator<Integer> iterator = Resources.AT_SQL.paginate(SELECT, "id", 5)
+                .setList(300, 325)
+                .withStartKey(310)
+                .withPrefetch()
+                .iterator(rs -> rs.getInt("id"))) {
+
+            while (iterator.hasNext())
+                ids.addAll(iterator.next());
+
+            assertEquals(325, ((Number) iterator.getLastKey()).intValue());
+        }
+
+        assertEquals(15, ids.size());
+        assertEquals(311, (int) ids.get(0));
+    }
+
+    @Test
+    public void paginateJoin()
+    {
+        String join = "SELECT a.id, a.name, b.id FROM student a JOIN student b ON b.id = a.id " +
+                "WHERE a.id > ? AND a.id <= ?";
+
+        List<Integer> ids = new ArrayList<>();
+
+        try (AtSQLPageIterator<Integer> iterator = Resources.AT_SQL.paginate(join, "a.id", 10)
+                .setList(300, 325)
+                .iterator(rs -> rs.getInt(1))) {
+
+            while (iterator.hasNext())
+                ids.addAll(iterator.next());
+        }
+
+        assertEquals(25, ids.size());
+        assertEquals(325, (int) ids.get(24));
+    }
+
+    @Test
+    public void pageQueriesAppend()
+    {
+        assertArrayEquals(new String[]{
+                        "SELECT id FROM student\nORDER BY id LIMIT ?",
+                        "SELECT id FROM student\nWHERE id > ?\nORDER BY id LIMIT ?"},
+                AtSQLPaginator.pageQueries("SELECT id FROM student;", "id"));
+
+        assertArrayEquals(new String[]{
+                        "SELECT s.id FROM student s WHERE (a = ? OR (b = 'ORDER')\n)\nORDER BY s.id LIMIT ?",
+                        "SELECT s.id FROM student s WHERE (a = ? OR (b = 'ORDER')\n) AND s.id > ?\nORDER BY s.id LIMIT ?"},
+                AtSQLPaginator.pageQueries("SELECT s.id FROM student s WHERE a = ? OR (b = 'ORDER')", "s.id"));
+    }
+
+    @Test
+    public void pageQueriesWrap()
+    {
+        assertArrayEquals(new String[]{
+                        "SELECT * FROM (SELECT DISTINCT s.id FROM student s\n) atsql_page ORDER BY atsql_page.id LIMIT ?",
+                        "SELECT * FROM (SELECT DISTINCT s.id FROM student s\n) atsql_page " +
+                                "WHERE atsql_page.id > ? ORDER BY atsql_page.id LIMIT ?"},
+                AtSQLPaginator.pageQueries("SELECT DISTINCT s.id FROM student s", "s.id"));
+    }
+}
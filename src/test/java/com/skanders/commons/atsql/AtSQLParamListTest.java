@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AtSQLParamListTest
+{
+    @Test
+    public void typedParams()
+    {
+        AtSQLParamList atSQLParamList = AtSQLParamList.withCapacity(2);
+
+        atSQLParamList.setInt(7);
+        atSQLParamList.setLong(Long.MAX_VALUE);
+        atSQLParamList.setDouble(2.5);
+        atSQLParamList.setString("CS");
+        atSQLParamList.setBytes(new byte[]{1, 2});
+        atSQLParamList.setNull(Types.VARCHAR);
+        atSQLParamList.setPair(Types.INTEGER, 9);
+        atSQLParamList.set("Student");
+
+        assertEquals(8, atSQLParamList.size());
+
+        assertEquals(AtSQLParamList.INT, atSQLParamList.kind(0));
+        assertEquals(7, atSQLParamList.getInt(0));
+        assertEquals(Long.MAX_VALUE, atSQLParamList.getLong(1));
+        assertEquals(2.5, atSQLParamList.getDouble(2));
+        assertEquals("CS", atSQLParamList.getObject(3));
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) atSQLParamList.getObject(4));
+
+        assertEquals(AtSQLParamList.NULL, atSQLParamList.kind(5));
+        assertEquals(Types.VARCHAR, atSQLParamList.getType(5));
+        assertNull(atSQLParamList.getValue(5));
+
+        assertEquals(AtSQLParamList.TYPED, atSQLParamList.kind(6));
+        assertEquals(Types.INTEGER, atSQLParamList.getType(6));
+        assertEquals("Student", atSQLParamList.getValue(7));
+    }
+
+    @Test
+    public void clearKeepsCapacity()
+    {
+        AtSQLParamList atSQLParamList = new AtSQLParamList(1, "Student1", 18);
+
+        atSQLParamList.clear();
+        atSQLParamList.setList(2, "Student2", 19);
+
+        assertEquals(3, atSQLParamList.size());
+        assertEquals("Student2", atSQLParamList.getValue(1));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AtSQLQueryCacheTest
+{
+    @Test
+    public void writeTarget()
+    {
+        assertEquals("student", AtSQLQueryCache.writeTarget("\n INSERT INTO student (id) VALUES (?)"));
+        assertEquals("`db`.`student`", AtSQLQueryCache.writeTarget("insert ignore into `db`.`student` VALUES (?)"));
+        assertEquals("student", AtSQLQueryCache.writeTarget("UPDATE student SET age = ? WHERE id = ?"));
+        assertEquals("student", AtSQLQueryCache.writeTarget("DELETE FROM student WHERE id > 0;"));
+        assertNull(AtSQLQueryCache.writeTarget("SELECT * FROM student"));
+    }
+
+    @Test
+    public void normalize()
+    {
+        assertEquals("student", AtSQLQueryCache.normalize("`db`.`Student`"));
+        assertEquals("student", AtSQLQueryCache.normalize("\"STUDENT\""));
+        assertEquals("student", AtSQLQueryCache.normalize("[student]"));
+    }
+
+    @Test
+    public void keyEquality()
+    {
+        String query = "SELECT * FROM student WHERE id = ? AND name = ?";
+
+        AtSQLParamList first = new AtSQLParamList();
+        first.setInt(1);
+        first.setBytes(new byte[]{1, 2});
+
+        AtSQLParamList second = new AtSQLParamList();
+        second.setInt(1);
+        second.setBytes(new byte[]{1, 2});
+
+        AtSQLParamList third = new AtSQLParamList();
+        third.setInt(2);
+        third.setBytes(new byte[]{1, 2});
+
+        assertEquals(AtSQLQueryCache.key(query, first), AtSQLQueryCache.key(query, second));
+        assertEquals(AtSQLQueryCache.key(query, first).hashCode(), AtSQLQueryCache.key(query, second).hashCode());
+        assertNotEquals(AtSQLQueryCache.key(query, first), AtSQLQueryCache.key(query, third));
+    }
+
+    @Test
+    public void recachedQueryStaysTagged() throws SQLException
+    {
+        AtSQLQueryCache queryCache = new AtSQLQueryCache(1000, 3_600_000L);
+
+        AtSQLParamList atSQLParamList = new AtSQLParamList();
+        atSQLParamList.setInt(1);
+
+        AtSQLQueryCache.Key key = AtSQLQueryCache.key("SELECT * FROM student WHERE id = ?", atSQLParamList);
+
+        String[] tables = {"student"};
+
+        queryCache.put(key, rows(), 60_000_000_000L, tables, queryCache.generations(tables));
+        queryCache.put(key, rows(), 60_000_000_000L, tables, queryCache.generations(tables));
+
+        assertNotNull(queryCache.get(key));
+
+        queryCache.invalidateWrite("UPDATE student SET age = ? WHERE id = ?", new String[0]);
+
+        assertNull(queryCache.get(key));
+    }
+
+    @Test
+    public void invalidatedWhileRunningIsNotCached() throws SQLException
+    {
+        AtSQLQueryCache queryCache = new AtSQLQueryCache(1000, 3_600_000L);
+
+        AtSQLQueryCache.Key key    = AtSQLQueryCache.key("SELECT * FROM student", new AtSQLParamList());
+        String[]            tables = {"student"};
+
+        long[] generations = queryCache.generations(tables);
+
+        queryCache.invalidateWrite("UPDATE `Student` SET age = ?", new String[0]);
+
+        assertNotNull(queryCache.put(key, rows(), 60_000_000_000L, tables, generations));
+        assertNull(queryCache.get(key));
+
+        queryCache.put(key, rows(), 60_000_000_000L, tables, queryCache.generations(tables));
+
+        assertNotNull(queryCache.get(key));
+    }
+
+    @Test
+    public void ttlCappedAtMax() throws SQLException, InterruptedException
+    {
+        AtSQLQueryCache queryCache = new AtSQLQueryCache(1000, 1L);
+
+        AtSQLQueryCache.Key key    = AtSQLQueryCache.key("SELECT * FROM student", new AtSQLParamList());
+        String[]            tables = {"student"};
+
+        queryCache.put(key, rows(), 60_000_000_000L, tables, queryCache.generations(tables));
+
+        Thread.sleep(10);
+
+        assertNull(queryCache.get(key));
+    }
+
+    private static CachedRowSet rows() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        metaData.setColumnName(1, "id");
+        metaData.setColumnLabel(1, "id");
+        metaData.setColumnType(1, Types.INTEGER);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        return rows;
+    }
+}
@@ -22,7 +22,10 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Types;
+import java.util.List;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 public class AtSQLQueryTest
@@ -93,4 +96,36 @@ public class AtSQLQueryTest
 
         assertFalse(resulted.notValid());
     }
+
+    @Test
+    public void queryStreamTest()
+    {
+        String query = "SELECT id, name FROM student WHERE id <= ?";
+
+        Resulted<AtSQLResult> resulted = Resources.AT_SQL.createQuery(query)
+                .set(3)
+                .withStreaming()
+                .withFetchSize(Integer.MIN_VALUE)
+                .executeQuery();
+
+        assertFalse(resulted.notValid());
+
+        try (Stream<String> names = resulted.value().stream(rs -> rs.getString("name"))) {
+            assertEquals(3, names.count());
+        }
+    }
+
+    @Test
+    public void queryAsyncTest()
+    {
+        String query = "SELECT name FROM student WHERE id <= ?";
+
+        Resulted<List<String>> resulted = Resources.AT_SQL.createQuery(query)
+                .setInt(3)
+                .executeQueryAsync(rs -> rs.getString("name"))
+                .join();
+
+        assertFalse(resulted.notValid());
+        assertEquals(3, resulted.value().size());
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class AtSQLReplicaRouterTest
+{
+    @Test
+    public void roundRobin()
+    {
+        FakeReplica        first  = new FakeReplica();
+        FakeReplica        second = new FakeReplica();
+        AtSQLReplicaRouter router = new AtSQLReplicaRouter(new HikariDataSource[]{first, second}, 60_000L);
+
+        assertSame(first.connection, router.getConnection());
+        assertSame(second.connection, router.getConnection());
+        assertSame(first.connection, router.getConnection());
+        assertSame(second.connection, router.getConnection());
+
+        assertEquals(2, first.requests);
+        assertEquals(2, second.requests);
+    }
+
+    @Test
+    public void skipsFailedReplica()
+    {
+        FakeReplica        first  = new FakeReplica();
+        FakeReplica        second = new FakeReplica();
+        AtSQLReplicaRouter router = new AtSQLReplicaRouter(new HikariDataSource[]{first, second}, 60_000L);
+
+        first.down = true;
+
+        assertSame(second.connection, router.getConnection());
+        assertSame(second.connection, router.getConnection());
+        assertSame(second.connection, router.getConnection());
+
+        // Cooling down, so it is not asked again even once back up
+        first.down = false;
+
+        assertSame(second.connection, router.getConnection());
+        assertEquals(1, first.requests);
+    }
+
+    @Test
+    public void retriedAfterCoolDown() throws InterruptedException
+    {
+        FakeReplica        first  = new FakeReplica();
+        FakeReplica        second = new FakeReplica();
+        AtSQLReplicaRouter router = new AtSQLReplicaRouter(new HikariDataSource[]{first, second}, 1L);
+
+        first.down = true;
+
+        assertSame(second.connection, router.getConnection());
+
+        first.down = false;
+        Thread.sleep(5);
+
+        assertSame(second.connection, router.getConnection());
+        assertSame(first.connection, router.getConnection());
+    }
+
+    @Test
+    public void fallsBackToPrimary()
+    {
+        FakeReplica        first  = new FakeReplica();
+        FakeReplica        second = new FakeReplica();
+        AtSQLReplicaRouter router = new AtSQLReplicaRouter(new HikariDataSource[]{first, second}, 60_000L);
+
+        first.down  = true;
+        second.down = true;
+
+        assertNull(router.getConnection());
+        assertNull(router.getConnection());
+
+        // Both are cooling down, so neither is asked again
+        assertEquals(1, first.requests);
+        assertEquals(1, second.requests);
+    }
+
+    private static class FakeReplica extends HikariDataSource
+    {
+        private final Connection connection = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> null);
+
+        private boolean down;
+        private int     requests;
+
+        @Override
+        public Connection getConnection()
+                throws SQLException
+        {
+            requests++;
+
+            if (down)
+                throw new SQLException("Replica down");
+
+            return connection;
+        }
+    }
+}
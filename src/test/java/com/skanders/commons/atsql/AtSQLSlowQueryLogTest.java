@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLSlowQueryLogTest
+{
+    @Test
+    public void threshold()
+    {
+        AtSQLSlowQueryLog slowQueryLog = new AtSQLSlowQueryLog(10, 4, 0.0, false);
+
+        assertFalse(slowQueryLog.isSlow(9_999_999L));
+        assertTrue(slowQueryLog.isSlow(10_000_000L));
+    }
+
+    @Test
+    public void ringBuffer()
+    {
+        AtSQLSlowQueryLog slowQueryLog = new AtSQLSlowQueryLog(0, 2, 0.0, false);
+
+        slowQueryLog.record("SELECT * FROM student WHERE id = 1", "query", 1, 1, null, 0, 0);
+        slowQueryLog.record("UPDATE student SET age = 20", "update", 2, 1, null, 0, 0);
+        slowQueryLog.record("DELETE FROM student WHERE id = 3", "update", 3, 1, null, 0, 0);
+
+        List<AtSQLSlowQuery> recent = slowQueryLog.recent();
+
+        assertEquals(2, recent.size());
+        assertEquals("DELETE FROM student WHERE id = ?", recent.get(0).getFingerprint());
+        assertEquals(2, recent.get(1).getElapsedNanos());
+        assertNull(recent.get(0).getParams());
+
+        slowQueryLog.clear();
+
+        assertTrue(slowQueryLog.recent().isEmpty());
+    }
+
+    @Test
+    public void capturedParams()
+    {
+        AtSQLParamList params = new AtSQLParamList(1, "Student1", new byte[]{1, 2}, null);
+
+        AtSQLSlowQueryLog plain    = new AtSQLSlowQueryLog(0, 1, 1.0, false);
+        AtSQLSlowQueryLog redacted = new AtSQLSlowQueryLog(0, 1, 1.0, true);
+
+        plain.record("INSERT INTO student VALUES (?,?,?,?)", "update", 1, 1, params, 0, 2);
+        redacted.record("INSERT INTO student VALUES (?,?,?,?)", "update", 1, 1, params, 0, 4);
+
+        assertEquals(Arrays.asList(1, "Student1"), plain.recent().get(0).getParams());
+        assertEquals(Arrays.asList("<Integer>", "<String:8>", "<byte[]:2>", "<null>"),
+                redacted.recent().get(0).getParams());
+    }
+}
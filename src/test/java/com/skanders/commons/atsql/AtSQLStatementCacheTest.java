@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLStatementCacheTest
+{
+    @Test
+    public void hitAndMiss() throws SQLException
+    {
+        List<String>        calls          = new ArrayList<>();
+        AtSQLCacheCounter   counter        = new AtSQLCacheCounter();
+        AtSQLStatementCache statementCache = new AtSQLStatementCache(connection(calls), 10, counter);
+
+        statementCache.prepare("SELECT 1").close();
+        statementCache.prepare("SELECT 1").close();
+        statementCache.prepareKeyed("SELECT 1").close();
+
+        assertEquals(2, count(calls, "prepareStatement"));
+        assertEquals(1, counter.snapshot().getHits());
+        assertEquals(2, counter.snapshot().getMisses());
+    }
+
+    @Test
+    public void inUseStatementIsNotShared() throws SQLException
+    {
+        List<String>        calls          = new ArrayList<>();
+        AtSQLStatementCache statementCache = new AtSQLStatementCache(connection(calls), 10, new AtSQLCacheCounter());
+
+        AtSQLStatement first  = statementCache.prepare("SELECT 1");
+        AtSQLStatement second = statementCache.prepare("SELECT 1");
+
+        assertEquals(2, count(calls, "prepareStatement"));
+
+        first.close();
+        second.close();
+
+        // Only one copy is kept, the other is closed on release
+        assertEquals(1, count(calls, "close"));
+    }
+
+    @Test
+    public void releaseResetsStatement() throws SQLException
+    {
+        List<String>        calls          = new ArrayList<>();
+        AtSQLStatementCache statementCache = new AtSQLStatementCache(connection(calls), 10, new AtSQLCacheCounter());
+
+        AtSQLStatement atSQLStatement = statementCache.prepare("INSERT INTO student (id) VALUES (?)");
+        atSQLStatement.setFetchSize(100);
+        atSQLStatement.setQueryTimeout(5);
+        atSQLStatement.setBatch(new AtSQLParamList());
+        calls.clear();
+
+        atSQLStatement.close();
+
+        assertTrue(calls.contains("clearParameters"));
+        assertTrue(calls.contains("clearBatch"));
+        assertTrue(calls.contains("setFetchSize[0]"));
+        assertTrue(calls.contains("setQueryTimeout[0]"));
+        assertFalse(calls.contains("close"));
+    }
+
+    @Test
+    public void evictsEldest() throws SQLException
+    {
+        List<String>        calls          = new ArrayList<>();
+        AtSQLCacheCounter   counter        = new AtSQLCacheCounter();
+        AtSQLStatementCache statementCache = new AtSQLStatementCache(connection(calls), 1, counter);
+
+        statementCache.prepare("SELECT 1").close();
+        statementCache.prepare("SELECT 2").close();
+
+        assertEquals(1, counter.snapshot().getEvictions());
+        assertEquals(1, count(calls, "close"));
+    }
+
+    @Test
+    public void retiresClosedConnections() throws SQLException
+    {
+        List<String> openCalls   = new ArrayList<>();
+        List<String> closedCalls = new ArrayList<>();
+        Connection   open        = connection(openCalls);
+        Connection   closed      = connection(closedCalls);
+
+        Map<Connection, AtSQLStatementCache> statementCaches = new HashMap<>();
+        statementCaches.put(open, new AtSQLStatementCache(open, 10, new AtSQLCacheCounter()));
+        statementCaches.put(closed, new AtSQLStatementCache(closed, 10, new AtSQLCacheCounter()));
+
+        statementCaches.get(open).prepare("SELECT 1").close();
+        statementCaches.get(closed).prepare("SELECT 1").close();
+
+        closed.close();
+        AtSQLStatementCache.retire(statementCaches);
+
+        assertTrue(statementCaches.containsKey(open));
+        assertFalse(statementCaches.containsKey(closed));
+        assertEquals(1, count(closedCalls, "close"));
+        assertEquals(0, count(openCalls, "close"));
+    }
+
+    @Test
+    public void closeRollsBackUncommittedWork() throws SQLException
+    {
+        List<String>    calls           = new ArrayList<>();
+        AtSQLConnection atSQLConnection = new AtSQLConnection(connection(calls), true);
+
+        atSQLConnection.setAutoCommitOff();
+        atSQLConnection.preparedStatement("INSERT INTO student (id) VALUES (?)").close();
+        atSQLConnection.close();
+
+        assertTrue(calls.indexOf("rollback") >= 0);
+        assertTrue(calls.indexOf("rollback") < calls.indexOf("setAutoCommit[true]"));
+    }
+
+    @Test
+    public void closeKeepsCommittedWork() throws SQLException
+    {
+        List<String>    calls           = new ArrayList<>();
+        AtSQLConnection atSQLConnection = new AtSQLConnection(connection(calls), true);
+
+        atSQLConnection.setAutoCommitOff();
+        atSQLConnection.preparedStatement("INSERT INTO student (id) VALUES (?)").close();
+        atSQLConnection.commit();
+        atSQLConnection.close();
+
+        assertFalse(calls.contains("rollback"));
+        assertTrue(calls.contains("setAutoCommit[true]"));
+    }
+
+    private static long count(List<String> calls, String call)
+    {
+        return calls.stream().filter(call::equals).count();
+    }
+
+    /**
+     * Records the calls made on a connection and every statement it
+     * prepares, statements share the connection's call list.
+     */
+    private static Connection connection(List<String> calls)
+    {
+        boolean[] closed = {false};
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            calls.add("prepareStatement");
+                            return statement(calls);
+                        case "close":
+                            closed[0] = true;
+                            return null;
+                        case "isClosed":
+                            return closed[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            record(calls, method.getName(), args);
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static PreparedStatement statement(List<String> calls)
+    {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            record(calls, method.getName(), args);
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static void record(List<String> calls, String name, Object[] args)
+    {
+        calls.add(args == null || args.length != 1 ? name : name + "[" + args[0] + "]");
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+
+        return null;
+    }
+}
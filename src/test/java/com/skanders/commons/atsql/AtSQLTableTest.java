@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLTableTest
+{
+    @Test
+    public void readColumns() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        column(metaData, 1, "id", Types.INTEGER);
+        column(metaData, 2, "major", Types.VARCHAR);
+        column(metaData, 3, "credits", Types.BIGINT);
+        column(metaData, 4, "gpa", Types.DOUBLE);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        for (int id = 1; id <= 40; id++) {
+            rows.moveToInsertRow();
+            rows.updateInt(1, id);
+            rows.updateString(2, id % 2 == 0 ? "CS" : "EE");
+
+            if (id % 2 == 0)
+                rows.updateLong(3, id * 10L);
+            else
+                rows.updateNull(3);
+
+            rows.updateDouble(4, id / 10.0);
+            rows.insertRow();
+        }
+
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        AtSQLTable table = AtSQLTable.read(rows);
+
+        assertEquals(40, table.getRowCount());
+        assertEquals(4, table.getColumnCount());
+        assertEquals(2, table.getDictionarySize());
+        assertEquals(2, table.findColumn("CREDITS"));
+
+        int sum = 0;
+
+        for (int row = 0; row < table.getRowCount(); row++) {
+            int id = table.getInt(row, 0);
+            sum += id;
+
+            assertEquals(id % 2 == 0 ? "CS" : "EE", table.getString(row, "major"));
+            assertEquals(id / 10.0, table.getDouble(row, "gpa"));
+
+            if (id % 2 == 0) {
+                assertFalse(table.isNull(row, "credits"));
+                assertEquals(id * 10L, table.getLong(row, "credits"));
+            } else {
+                assertTrue(table.isNull(row, "credits"));
+                assertEquals(0, table.getLong(row, "credits"));
+                assertNull(table.getObject(row, "credits"));
+            }
+        }
+
+        assertEquals(820, sum);
+    }
+
+    @Test
+    public void readUnsignedInt() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        column(metaData, 1, "id", Types.BIGINT);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        rows.moveToInsertRow();
+        rows.updateLong(1, 4_000_000_000L);
+        rows.insertRow();
+
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+
+        // The row set refuses the value as an INTEGER, so only the reported type is changed
+        RowSetMetaDataImpl unsigned = new RowSetMetaDataImpl();
+        unsigned.setColumnCount(1);
+        column(unsigned, 1, "id", Types.INTEGER);
+        unsigned.setSigned(1, false);
+
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMetaData"))
+                        return unsigned;
+
+                    try {
+                        return method.invoke(rows, args);
+
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+
+                    }
+                });
+
+        AtSQLTable table = AtSQLTable.read(resultSet);
+
+        assertEquals(4_000_000_000L, table.getLong(0, "id"));
+        assertEquals(4_000_000_000L, table.getObject(0, "id"));
+    }
+
+    @Test
+    public void readEmpty() throws SQLException
+    {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        column(metaData, 1, "id", Types.INTEGER);
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        AtSQLTable table = AtSQLTable.read(rows);
+
+        assertEquals(0, table.getRowCount());
+        assertEquals("id", table.getColumnLabel(0));
+    }
+
+    @Test
+    public void findColumnIgnoresLocale() throws SQLException
+    {
+        Locale locale = Locale.getDefault();
+
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+            metaData.setColumnCount(1);
+            column(metaData, 1, "ID", Types.INTEGER);
+
+            CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+            rows.setMetaData(metaData);
+
+            AtSQLTable table = AtSQLTable.read(rows);
+
+            assertEquals(0, table.findColumn("id"));
+            assertEquals(0, table.findColumn("ID"));
+
+        } finally {
+            Locale.setDefault(locale);
+
+        }
+    }
+
+    private static void column(RowSetMetaDataImpl metaData, int index, String name, int type) throws SQLException
+    {
+        metaData.setColumnName(index, name);
+        metaData.setColumnLabel(index, name);
+        metaData.setColumnType(index, type);
+        metaData.setSigned(index, true);
+    }
+}
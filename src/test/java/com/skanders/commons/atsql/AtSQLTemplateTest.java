@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.def.SkandersException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLTemplateTest
+{
+    @Test
+    public void compileRepeatedNames()
+    {
+        AtSQLTemplate template = AtSQLTemplate.compile(null,
+                "SELECT * FROM student WHERE age > :age AND (major = :major OR :major IS NULL)");
+
+        assertEquals("SELECT * FROM student WHERE age > ? AND (major = ? OR ? IS NULL)", template.getQuery());
+        assertEquals(Arrays.asList("age", "major"), template.getNames());
+        assertArrayEquals(new int[]{0, 1, 1}, template.slots());
+    }
+
+    @Test
+    public void compileSkipsQuotesCommentsAndCasts()
+    {
+        AtSQLTemplate template = AtSQLTemplate.compile(null, "" +
+                "SELECT ':skip', \"a:skip\", `b:skip`, 'it''s :skip', x::text -- :skip\n" +
+                "FROM t /* :skip */ WHERE id = :id AND @v := 1");
+
+        assertEquals("" +
+                "SELECT ':skip', \"a:skip\", `b:skip`, 'it''s :skip', x::text -- :skip\n" +
+                "FROM t /* :skip */ WHERE id = ? AND @v := 1", template.getQuery());
+        assertEquals(Arrays.asList("id"), template.getNames());
+    }
+
+    @Test
+    public void listBuckets()
+    {
+        assertEquals(1, AtSQLBinder.bucket(0));
+        assertEquals(1, AtSQLBinder.bucket(1));
+        assertEquals(4, AtSQLBinder.bucket(3));
+        assertEquals(1024, AtSQLBinder.bucket(1024));
+    }
+
+    @Test
+    public void bindListExpandsToBucket()
+    {
+        AtSQLBinder binder = AtSQLTemplate.compile(null, "SELECT * FROM student WHERE id IN (:ids) AND age > :age")
+                .bind()
+                .setList("ids", Arrays.asList(1, 2, 3))
+                .setInt("age", 18);
+
+        assertEquals(-1, binder.split());
+        assertEquals("SELECT * FROM student WHERE id IN (?,?,?,?) AND age > ?", binder.query(-1, 0));
+
+        binder.setList("ids", Collections.emptyList());
+        assertEquals("SELECT * FROM student WHERE id IN (?) AND age > ?", binder.query(-1, 0));
+    }
+
+    @Test
+    public void bindListSplitsLargeLists()
+    {
+        List<Integer> ids = new ArrayList<>();
+
+        for (int i = 0; i < 2500; i++)
+            ids.add(i % 2400);
+
+        AtSQLBinder binder = AtSQLTemplate.compile(null, "SELECT * FROM student WHERE id IN (:ids)")
+                .bind()
+                .setList("ids", ids);
+
+        assertEquals(0, binder.split());
+        assertEquals(3, binder.chunks(0));
+        assertEquals(1024 * 2 - 1 + 36, binder.query(0, 0).length());
+        assertEquals(512 * 2 - 1 + 36, binder.query(0, 2).length());
+    }
+
+    @Test
+    public void rebindingKeepsParamsBounded()
+    {
+        AtSQLBinder binder = AtSQLTemplate.compile(null, "SELECT * FROM student WHERE id IN (:ids) AND age > :age")
+                .bind();
+
+        for (int i = 0; i < 1000; i++)
+            binder.setList("ids", Arrays.asList(i, i + 1, i + 2)).setInt("age", i);
+
+        assertTrue(binder.paramCount() <= 8);
+        assertEquals(999, binder.value("ids", 0));
+        assertEquals(1001, binder.value("ids", 2));
+        assertEquals(999, binder.value("age", 0));
+    }
+
+    @Test
+    public void compileRejectsPositionalParams()
+    {
+        assertThrows(SkandersException.class, () -> AtSQLTemplate.compile(null, "SELECT * FROM t WHERE id = ?"));
+    }
+}
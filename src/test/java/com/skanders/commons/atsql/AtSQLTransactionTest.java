@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import com.skanders.commons.result.Resulted;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Savepoint;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class AtSQLTransactionTest
+{
+    private static final String INSERT = "\n" +
+            "INSERT INTO student \n" +
+            "     (id, name, age, major, year) \n" +
+            "VALUES \n" +
+            "     (?,?,?,?,?)";
+
+    @BeforeAll
+    public static void clearDb()
+    {
+        String query = "DELETE FROM student WHERE id > 0;";
+
+        Resources.AT_SQL.createQuery(query).executeUpdate();
+    }
+
+    @Test
+    public void transactionCommit()
+    {
+        Resulted<AtSQLTransaction> resulted = Resources.AT_SQL.beginTransaction();
+
+        assertFalse(resulted.notValid());
+
+        try (AtSQLTransaction transaction = resulted.value()) {
+            assertFalse(transaction.createQuery(INSERT).setList(201, "Student201", 18, "CS", 1).executeUpdate().notValid());
+            assertFalse(transaction.createBatch(INSERT).setList(202, "Student202", 19, "CS", 2).executeBatch().notValid());
+
+            Resulted<Savepoint> savepoint = transaction.savepoint();
+            assertFalse(savepoint.notValid());
+
+            transaction.createQuery(INSERT).setList(203, "Student203", 20, "CS", 3).executeUpdate();
+            assertFalse(transaction.rollback(savepoint.value()).notValid());
+
+            assertFalse(transaction.commit().notValid());
+        }
+
+        Resulted<List<Integer>> ids = Resources.AT_SQL
+                .createQuery("SELECT id FROM student WHERE id > 200 ORDER BY id")
+                .executeQuery(rs -> rs.getInt(1));
+
+        assertFalse(ids.notValid());
+        assertEquals(2, ids.value().size());
+    }
+
+    @Test
+    public void transactionRollbackOnClose()
+    {
+        Resulted<AtSQLTransaction> resulted = Resources.AT_SQL.beginTransaction();
+
+        assertFalse(resulted.notValid());
+
+        try (AtSQLTransaction transaction = resulted.value()) {
+            transaction.createQuery(INSERT).setList(301, "Student301", 18, "CS", 1).executeUpdate();
+        }
+
+        Resulted<List<Integer>> ids = Resources.AT_SQL
+                .createQuery("SELECT id FROM student WHERE id > 300")
+                .executeQuery(rs -> rs.getInt(1));
+
+        assertFalse(ids.notValid());
+        assertEquals(0, ids.value().size());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class AtSQLValuesRewriterTest
+{
+    @Test
+    public void rewrite()
+    {
+        AtSQLValuesRewriter rewriter = AtSQLValuesRewriter.parse(
+                "\nINSERT INTO student \n (id, name) \nVALUES \n (?, ?);");
+
+        assertNotNull(rewriter);
+        assertEquals(2, rewriter.width());
+        assertEquals("\nINSERT INTO student \n (id, name) \nVALUES \n (?, ?)", rewriter.rewrite(1));
+        assertEquals("\nINSERT INTO student \n (id, name) \nVALUES \n (?, ?),(?, ?),(?, ?),(?, ?)", rewriter.rewrite(4));
+        assertSame(rewriter.rewrite(4), rewriter.rewrite(4));
+    }
+
+    @Test
+    public void rewriteSuffix()
+    {
+        AtSQLValuesRewriter rewriter = AtSQLValuesRewriter.parse(
+                "insert into student (id, age) values (?,?) on duplicate key update age = values(age)");
+
+        assertNotNull(rewriter);
+        assertEquals("insert into student (id, age) values (?,?),(?,?) on duplicate key update age = values(age)",
+                rewriter.rewrite(2));
+    }
+
+    @Test
+    public void unrecognized()
+    {
+        assertNull(AtSQLValuesRewriter.parse("UPDATE student SET age = ? WHERE id = ?"));
+        assertNull(AtSQLValuesRewriter.parse("INSERT INTO student (id, year) VALUES (?, YEAR(NOW()))"));
+        assertNull(AtSQLValuesRewriter.parse("INSERT INTO student (id) SELECT id FROM other WHERE id = ?"));
+        assertNull(AtSQLValuesRewriter.parse("INSERT INTO student (id, age) VALUES (?, ?) ON DUPLICATE KEY UPDATE age = ?"));
+    }
+
+    @Test
+    public void chunkRows()
+    {
+        assertEquals(1, AtSQLValuesRewriter.chunkRows(1, 100));
+        assertEquals(4, AtSQLValuesRewriter.chunkRows(7, 100));
+        assertEquals(64, AtSQLValuesRewriter.chunkRows(1000, 100));
+        assertEquals(1, AtSQLValuesRewriter.chunkRows(5, 1));
+    }
+}
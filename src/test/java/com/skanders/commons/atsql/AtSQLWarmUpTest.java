@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import com.skanders.commons.result.Result;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLWarmUpTest
+{
+    @Test
+    public void warmUpCountLeavesAConnection()
+    {
+        assertEquals(9, AtSQL.warmUpCount(10, 10));
+        assertEquals(4, AtSQL.warmUpCount(4, 10));
+        assertEquals(1, AtSQL.warmUpCount(0, 10));
+        assertEquals(0, AtSQL.warmUpCount(1, 1));
+    }
+
+    @Test
+    public void readyWithoutWarmUp()
+    {
+        assertTrue(Resources.AT_SQL.readiness().isDone());
+        assertTrue(Resources.AT_SQL.isReady());
+    }
+
+    @Test
+    public void warmUpAtBuild()
+    {
+        AtSQL atSQL = Resources.newFactory()
+                .withMinimumIdle(2)
+                .withStatementCacheSize(16)
+                .withWarmUp("SELECT 1", "SELECT ?")
+                .build();
+
+        try {
+            assertTrue(atSQL.readiness().isDone());
+            assertSame(Result.VALID, atSQL.readiness().join());
+            assertTrue(atSQL.isReady());
+            assertEquals(4, atSQL.statementCacheStats().getMisses());
+
+        } finally {
+            atSQL.close();
+
+        }
+
+        assertFalse(atSQL.isReady());
+    }
+
+    @Test
+    public void backgroundWarmUp() throws Exception
+    {
+        AtSQL atSQL = Resources.newFactory()
+                .withMinimumIdle(2)
+                .withBackgroundWarmUp("SELECT 1")
+                .build();
+
+        try {
+            assertSame(Result.VALID, atSQL.readiness().get(10, TimeUnit.SECONDS));
+            assertTrue(atSQL.isReady());
+
+        } finally {
+            atSQL.close();
+
+        }
+    }
+
+    @Test
+    public void warmUpFailure()
+    {
+        AtSQL atSQL = Resources.newFactory()
+                .withWarmUp("SELECT FROM WHERE")
+                .build();
+
+        try {
+            assertTrue(atSQL.readiness().isDone());
+            assertNotSame(Result.VALID, atSQL.readiness().join());
+            assertFalse(atSQL.isReady());
+
+        } finally {
+            atSQL.close();
+
+        }
+    }
+
+    @Test
+    public void backgroundWarmUpFailure() throws Exception
+    {
+        AtSQL atSQL = Resources.newFactory()
+                .withBackgroundWarmUp("SELECT FROM WHERE")
+                .build();
+
+        try {
+            assertNotSame(Result.VALID, atSQL.readiness().get(10, TimeUnit.SECONDS));
+            assertFalse(atSQL.isReady());
+
+        } finally {
+            atSQL.close();
+
+        }
+    }
+
+    @Test
+    public void warmUpPreparesQueries()
+    {
+        Result result = Resources.AT_SQL.warmUp(Arrays.asList("SELECT 1", "SELECT ?"));
+
+        assertSame(Result.VALID, result);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Alexander Iskander
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.skanders.commons.atsql;
+
+import com.skanders.commons.Resources;
+import com.skanders.commons.def.SkandersException;
+import com.skanders.commons.result.Resulted;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AtSQLWriteBehindTest
+{
+    private static final String UPSERT = "\n" +
+            "INSERT INTO student \n" +
+            "     (id, name, age, major, year) \n" +
+            "VALUES \n" +
+            "     (?,?,?,?,?) \n" +
+            "ON DUPLICATE KEY UPDATE age = VALUES(age)";
+
+    @BeforeAll
+    public static void clearDb()
+    {
+        Resources.AT_SQL.createQuery("DELETE FROM student WHERE id > 400 AND id <= 410;").executeUpdate();
+    }
+
+    @Test
+    public void coalesceAndFlushOnClose()
+    {
+        AtSQLWriteBehind<Integer> writeBehind = Resources.AT_SQL.<Integer>createWriteBehind(UPSERT)
+                .withMerge((buffered, row) -> new Object[]{
+                        row[0], row[1], (int) buffered[2] + (int) row[2], row[3], row[4]})
+                .withFlushInterval(Duration.ofMinutes(1))
+                .start();
+
+        for (int i = 0; i < 50; i++)
+            assertFalse(writeBehind.write(401 + i % 5, 401 + i % 5, "Student", 1, "CS", 1).notValid());
+
+        assertEquals(5, writeBehind.getPending());
+        assertEquals(45, writeBehind.getCoalesced());
+
+        writeBehind.close();
+
+        assertEquals(5, writeBehind.getFlushedRows());
+
+        Resulted<List<Integer>> ages = Resources.AT_SQL
+                .createQuery("SELECT age FROM student WHERE id > 400 AND id <= 405 ORDER BY id")
+                .executeQuery(rs -> rs.getInt(1));
+
+        assertFalse(ages.notValid());
+        assertEquals(5, ages.value().size());
+        assertEquals(10, (int) ages.value().get(0));
+    }
+
+    @Test
+    public void offerWhenFull()
+    {
+        AtSQLWriteBehind<Integer> writeBehind = Resources.AT_SQL.<Integer>createWriteBehind(UPSERT)
+                .withCapacity(1)
+                .withFlushInterval(Duration.ofMinutes(1))
+                .start();
+
+        assertFalse(writeBehind.write(406, 406, "Student", 18, "CS", 1).notValid());
+        assertFalse(writeBehind.offer(406, Duration.ZERO, 406, "Student", 19, "CS", 1).notValid());
+        assertTrue(writeBehind.offer(407, Duration.ZERO, 407, "Student", 18, "CS", 1).notValid());
+
+        assertFalse(writeBehind.flush().notValid());
+        assertFalse(writeBehind.offer(407, Duration.ZERO, 407, "Student", 18, "CS", 1).notValid());
+
+        writeBehind.close();
+    }
+
+    @Test
+    public void shutdownReportsUnflushed()
+    {
+        AtSQLWriteBehind<Integer> writeBehind = Resources.AT_SQL
+                .<Integer>createWriteBehind("INSERT INTO missing_table (id) VALUES (?)")
+                .withFlushInterval(Duration.ofMinutes(1))
+                .start();
+
+        assertFalse(writeBehind.write(1, 1).notValid());
+
+        assertTrue(writeBehind.shutdown().notValid());
+        assertEquals(1, writeBehind.getPending());
+        assertThrows(SkandersException.class, writeBehind::close);
+    }
+}